@@ -56,7 +56,8 @@ public class AlgoThread extends Thread {
      */
     public void run() {
         try {
-            threadID = cybar.await();                       // get the ID for this thread
+            threadID = sync.threadID();                     // get the ID for this thread
+            cybar.await();
             
             if (threadID == 0) {                            // only do this once (if multiple threads are running)
                 progress = new ProgressUpdater(samples);    // create a new progressUpdater to update UI
@@ -79,6 +80,7 @@ public class AlgoThread extends Thread {
                  * Once all threads are waiting, the cooc computation will be performed automatically by one thread
                  * before all threads are released. This is done by the Synchronizers run-method. */
                 cybar.await();
+                if (sync.isFinished()) break;                   // sampling stopped before all samples were taken
                 int ac1;
                 while ((ac1 = sync.actorID()) >= 0) {           // while there are still actors left
                     g.projection.doPerActorDuringSampling(ac1); // perform the inSampling action
@@ -19,6 +19,7 @@
 package algo;
 
 import graph.Graph;
+import graph.RandomStream;
 
 import java.util.concurrent.CyclicBarrier;
 
@@ -42,10 +43,33 @@ public class Algorithm {
      * Compute p-values based on FDSM method
      */
     public void compute() {
+        if (!g.projection.needsSampling()) {
+            computeAnalytic();
+            return;
+        }
+        if (g.settings.getSamplingMode().equals("independent")) {
+            computeIndependent();
+            return;
+        }
         SynchronizedLock synLock = new SynchronizedLock();          // Lock this thread will wait on until computation finishes
-        Synchronizer sync = new Synchronizer(g);                    // synchronizer to assign work to individual threads
-        CyclicBarrier cybar = new CyclicBarrier(g.threads, sync);   // cyclicBarrier used to synchronize threads
-        g.initBeforeSampling();
+        Synchronizer sync;                                          // synchronizer to assign work to individual threads
+        CyclicBarrier cybar;                                        // cyclicBarrier used to synchronize threads
+        if (g.settings.getSamplingMode().equals("pipeline")) {
+            /* samples are generated on a copy of the graph by an additional thread, while the
+             * workthreads evaluate the previous sample. The barrier publishes each new sample. */
+            Graph chain = g.createChainCopy();
+            chain.threads = 1;                                      // the workthreads are busy evaluating meanwhile, so
+                                                                    // parallel swaps and actor draws start no workers
+            chain.initBeforeSampling();
+            g.mixing = chain.mixing;                                // report the diagnostics of the chain
+            sync = new Synchronizer(g, chain);
+            cybar = new CyclicBarrier(g.threads + 1, sync);
+            if (g.threads > 0) new SampleProducer(chain, cybar, sync).start();
+        } else {
+            sync = new Synchronizer(g);
+            cybar = new CyclicBarrier(g.threads, sync);
+            g.initBeforeSampling();
+        }
         g.projection.doOnceBeforeSampling();
         
         // create the requested number of workthreads and run them
@@ -57,6 +81,68 @@ public class Algorithm {
  
         if (g.threads > 0) synLock.await();    // sleep while waiting for workthreads to finish
         else System.out.println("Unable to compute with 0 threads. Aborting.");
+        g.projection.doOnceAfterSampling();
+    }
+    
+    /**
+     * Compute a projection that does not need samples. The threads only perform the
+     * computation before sampling for all actors.
+     */
+    private void computeAnalytic() {
+        if (g.threads <= 0) {
+            System.out.println("Unable to compute with 0 threads. Aborting.");
+            return;
+        }
+        final Synchronizer sync = new Synchronizer(g);             // synchronizer to assign actors to the threads
+        g.projection.doOnceBeforeSampling();
+        ProgressUpdater progress = new ProgressUpdater(0);
+        progress.initCooc();
+        Thread[] t = new Thread[g.threads];
+        for (int i=0; i<g.threads; i++) {
+            t[i] = new Thread() {
+                public void run() {
+                    int a;                                          // actor ID
+                    while ((a = sync.actorID()) >= 0) {             // for all actors a
+                        g.projection.doPerActorBeforeSampling(a);
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i=0; i<g.threads; i++) {
+            try {
+                t[i].join();                                        // wait for all threads to finish
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        progress.finishCooc();
+        g.projection.doOnceAfterSampling();
+    }
+    
+    /**
+     * Compute p-values based on FDSM method with one independent chain per thread.
+     * The random number generators of the chains are split off one generator seeded with the
+     * random seed of the graph in order, so results
+     * are reproducible for a given seed and number of threads.
+     */
+    private void computeIndependent() {
+        SynchronizedLock synLock = new SynchronizedLock();          // Lock this thread will wait on until computation finishes
+        Synchronizer sync = new Synchronizer(g);                    // synchronizer to assign actors for the initial cooc
+        CyclicBarrier cybar = new CyclicBarrier(g.threads);         // cyclicBarrier used to synchronize threads
+        g.projection.doOnceBeforeSampling();
+        
+        // create the requested number of chains and run them
+        RandomStream streams = RandomStream.create(g.settings.getRng(), g.randomSeed); // the random number generators of all chains are split off this one
+        ChainThread[] t = new ChainThread[g.threads];
+        for (int i=0; i<g.threads; i++) {
+            t[i] = new ChainThread(g, sync, cybar, synLock, i, streams.split());
+            t[i].start();
+        }
+        
+        if (g.threads > 0) synLock.await();    // sleep while waiting for workthreads to finish
+        else System.out.println("Unable to compute with 0 threads. Aborting.");
+        g.projection.doOnceAfterSampling();
     }
     
 }
\ No newline at end of file
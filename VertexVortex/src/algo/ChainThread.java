@@ -0,0 +1,128 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package algo;
+
+import graph.Graph;
+import graph.RandomStream;
+
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+
+import projection.abstr.Projection;
+
+/**
+ * Thread implementing FDSM with one independent markov chain per thread.
+ * Each thread samples on a private copy of the graph and counts in a private
+ * projection, which is merged into the projection of the original graph at the end.
+ */
+public class ChainThread extends Thread {
+    private Graph g;                    // graph object containing network data
+    private CyclicBarrier cybar;        // cyclic barrier used to synchronize with other threads
+    private Synchronizer sync;          // synchronizer used to request actor IDs for computation
+    private int samples;                // number of samples this chain takes
+    private int chainID;                // ID of this chain, used for generating feedback
+    private RandomStream random;        // random number generator of this chain
+    private SynchronizedLock synLock;   // Lock used to release main thread after computation is done
+    private ProgressUpdater progress;   // class used to output progress reports to UI
+
+    /**
+     * Default constructor
+     * @param graph graph object containing network data
+     * @param sync Synchronizer for assigning actor IDs
+     * @param cybar CyclicBarrier for multithreading organization
+     * @param synLock Lock to release main thread after computation is done
+     * @param chainID ID of this chain, determines the share of samples it takes
+     * @param random random number generator of this chain
+     */
+    public ChainThread(Graph graph, Synchronizer sync, CyclicBarrier cybar, SynchronizedLock synLock, int chainID, RandomStream random) {
+        super();
+        g = graph;
+        this.cybar = cybar;
+        this.sync = sync;
+        this.synLock = synLock;
+        this.chainID = chainID;
+        this.random = random;
+        // distribute the samples as evenly as possible over all chains
+        this.samples = g.samples / g.threads + ((chainID < g.samples % g.threads) ? 1 : 0);
+    }
+
+    /**
+     * Implements computation of FDSM algorithm on an independent chain
+     */
+    public void run() {
+        try {
+            if (chainID == 0) {                             // only do this once (if multiple threads are running)
+                progress = new ProgressUpdater(samples);    // create a new progressUpdater to update UI
+                progress.initCooc();                        // and tell it that initial cooc is being computed now
+            }
+            cybar.await();                                  // make sure the progress updater is ready
+
+            // Compute initial co-occurences
+            int a;                                          // actor ID
+            while ((a = sync.actorID()) >= 0) {             // for all actors a
+                g.projection.doPerActorBeforeSampling(a);   // perform the preSampling action
+            }
+            cybar.await();                                  // wait until all initial coocs are known
+
+            if (chainID == 0) {                             // only do this once (if multiple threads are running)
+                progress.finishCooc();                      // update UI
+                progress.initSampling();
+            }
+
+            // create the private chain and perform random walks on it
+            Graph chain = g.createChainCopy();
+            chain.setRandom(random);
+            chain.threads = 1;                              // the other threads are busy with their own chains
+            chain.initBeforeSampling();
+            if (chainID == 0) g.mixing = chain.mixing;      // the diagnostics of the first chain are reported
+            Projection proj = g.projection.createChainProjection(chain);
+            chain.projection = proj;
+            long start = System.currentTimeMillis();
+            int taken = 0;                                  // samples taken by this chain
+            for (int i=0; i<samples; i++) {
+                if (sync.timeUp(start, taken)) break;       // stop early to finish within the time limit
+                chain.createNextSample();                   // perform random walk to get a new graph
+                for (a=0; a<chain.actorCount; a++) {        // and compute coocs for all actors
+                    proj.doPerActorDuringSampling(a);
+                }
+                taken++;
+                if (chainID == 0) progress.updateSampling(i);   // update UI
+            }
+            sync.addSamples(taken);
+
+            synchronized (g.projection) {                   // merge the counts one chain at a time
+                g.projection.mergeChainProjection(proj);
+            }
+            cybar.await();                                  // wait for all threads to finish
+
+            if (chainID == 0) {
+                Arrays.fill(chain.changed, true);           // the graph still holds the original adjacency, so the
+                                                            // data derived from it is rebuilt for all actors
+                chain.copyAdjacencyTo(g);                   // the graph holds the final state of the first chain, once
+                                                            // no chain copies the graph any more
+                g.samples = sync.samplesTaken();            // results are relative to the samples actually taken
+                progress.finishSampling();                  // update UI
+                synLock.unlock();                           // then wake the main thread
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
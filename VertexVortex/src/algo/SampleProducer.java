@@ -0,0 +1,70 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package algo;
+
+import graph.Graph;
+
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Thread generating samples for the pipelined FDSM computation.
+ * The producer performs the random walk for the next sample on its own copy of the graph
+ * while the workthreads compute coocs on the current sample. Both meet at the cyclic barrier,
+ * where the Synchronizer hands the new sample to the graph the workthreads are reading by exchanging
+ * the buffers of both. The producer then brings the buffers it got back up to date with the sample
+ * at the start of the next one, while the workthreads evaluate it.
+ */
+public class SampleProducer extends Thread {
+    private Graph chain;                // copy of the graph the random walk is performed on
+    private CyclicBarrier cybar;        // cyclic barrier shared with the workthreads
+    private Synchronizer sync;          // synchronizer that publishes the samples and decides when to stop
+    private int samples;                // number of samples to generate
+
+    /**
+     * Default constructor
+     * @param chain copy of the graph the random walk is performed on
+     * @param cybar CyclicBarrier shared with the workthreads
+     * @param sync Synchronizer running at the barrier
+     */
+    public SampleProducer(Graph chain, CyclicBarrier cybar, Synchronizer sync) {
+        super();
+        this.chain = chain;
+        this.cybar = cybar;
+        this.sync = sync;
+        this.samples = chain.samples;
+    }
+
+    /**
+     * Generates one sample per barrier breach, mirroring the barrier calls of the workthreads
+     */
+    public void run() {
+        try {
+            cybar.await();                      // workthreads compute initial coocs on the original graph
+            for (int i=0; i<samples; i++) {
+                chain.createNextSample();       // generate the next sample while the previous one is evaluated
+                cybar.await();                  // and hand it over once the workthreads are done
+                if (sync.isFinished()) break;   // the workthreads stopped early, the last sample is not needed
+            }
+            cybar.await();                      // wait for the workthreads to finish
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -24,12 +24,23 @@ import graph.Graph;
  * Synchronizer that serves two purposes:
  * 1) Implements synchronized methods for assigning actor IDs to workthreads for cooc computation
  * 2) Implements runnable interface for performing edge swaps. This can be called from the cyclic barrier  
+ *    If a separate chain is given, the swaps are performed by a SampleProducer on that chain instead
+ *    and the barrier only publishes its latest sample to the graph by exchanging their buffers.
+ * 3) Decides whether sampling is finished before the number of samples is reached, once a target
+ *    precision is met or the time limit is close. All threads check this after the barrier, so they
+ *    stop after the same sample.
  */
 public class Synchronizer implements Runnable {
     private final Graph g;          // graph object 
+    private final Graph chain;      // chain the samples are generated on by a SampleProducer, or null
     private final int actors;       // number of actor nodes
     private int actorCounter;       // counter for actors
+    private int threadCounter;      // counter for thread IDs
     private boolean ready;          // flag to disable edge swapping. Set to false to disable swapping (for the next step only!)
+    private int samplesTaken;       // number of samples generated so far
+    private long samplingStart;     // time the first sample was generated
+    private volatile boolean finished;  // true once sampling stopped before the number of samples was reached
+    private static final int checkInterval = 50;    // number of samples between checks of the target precision
 
     /**
      * @param graph graph object containing network data
@@ -37,12 +48,30 @@ public class Synchronizer implements Runnable {
      * @param steps number of steps to perform in each random walk
      */
     public Synchronizer (Graph graph) {
+        this(graph, null);
+    }
+    
+    /**
+     * @param graph graph object containing network data
+     * @param chain copy of the graph the samples are generated on, or null to generate them on the graph itself
+     */
+    public Synchronizer (Graph graph, Graph chain) {
         this.g = graph;
+        this.chain = chain;
         this.actors = g.actorCount;
         this.actorCounter = -1;
+        this.threadCounter = -1;
         ready = false;
     }
     
+    /**
+     * Get a unique ID for a workthread. Synchronized for threading.
+     * @return ID of the calling thread
+     */
+    public synchronized int threadID() {
+        return ++threadCounter;
+    }
+    
     /**
      * Get ID of next actor to compute the algorithm step for. Synchronized for threading.
      * @return ID of next actor
@@ -54,6 +83,61 @@ public class Synchronizer implements Runnable {
         else return actorCounter;        // otherwise return the next free ID
     }
     
+    /**
+     * @return true if sampling stopped early, all threads leave the sampling loop
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    /**
+     * Checks whether another sample would exceed the time limit. Writing the results takes about as
+     * long as reading the graph and computing the initial coocs, but at least a twentieth of the
+     * limit is kept for it.
+     * @param start time the first sample was started
+     * @param samples number of samples taken since then
+     * @return true if sampling has to stop
+     */
+    public boolean timeUp(long start, int samples) {
+        int limit = g.settings.getTimeLimit();
+        if (limit <= 0 || samples == 0) return false;                       // no limit, or at least one sample is taken
+        long reserve = Math.max(50L*limit, start - g.settings.getStartTime());
+        long deadline = g.settings.getStartTime() + 1000L*limit - reserve;
+        long now = System.currentTimeMillis();
+        return now + (now - start) / samples > deadline;                    // an average sample would not finish in time
+    }
+    
+    /**
+     * Adds the samples an independent chain has taken to the total
+     * @param samples number of samples taken by the chain
+     */
+    public synchronized void addSamples(int samples) {
+        samplesTaken += samples;
+    }
+    
+    /**
+     * @return number of samples taken so far
+     */
+    public synchronized int samplesTaken() {
+        return samplesTaken;
+    }
+    
+    /**
+     * Checks whether the standard errors of the projection are below their targets. All samples
+     * generated so far have been evaluated when this is called at the barrier.
+     * @return true if sampling can stop
+     */
+    private boolean targetReached() {
+        double pvalueTarget = g.settings.getPvalueTarget();
+        double leverageTarget = g.settings.getLeverageTarget();
+        if (pvalueTarget <= 0 && leverageTarget <= 0) return false;         // take all samples
+        if (samplesTaken == 0 || samplesTaken % checkInterval != 0) return false;
+        double effective = g.mixing.effectiveSamples(samplesTaken);        // the samples of the chain are correlated
+        if (pvalueTarget > 0 && g.projection.pvalueError(samplesTaken, effective, g.settings.getAlpha()) > pvalueTarget) return false;
+        if (leverageTarget > 0 && g.projection.leverageError(samplesTaken, effective) > leverageTarget) return false;
+        return true;
+    }
+    
     /**
      * Disable swaps for the next step (next time the cyclic barrier is breached)
      */
@@ -68,7 +152,23 @@ public class Synchronizer implements Runnable {
     public void run() {
         actorCounter = -1;
         if (ready) {			          // if a random walk should be performed in this step
-            g.createNextSample();         // perform random walk to get a new graph
+            if (samplesTaken == 0) samplingStart = System.currentTimeMillis();
+            if (targetReached() || timeUp(samplingStart, samplesTaken)) {   // the samples so far are precise enough or time is up
+                finished = true;
+                ready = false;
+                g.samples = samplesTaken; // results are relative to the samples actually taken
+                return;
+            }
+            samplesTaken++;
+            if (chain == null) {
+                g.createNextSample();     // perform random walk to get a new graph
+            } else {
+                if (chain.settings.getIncrementalCooc() && chain.projection == null) {
+                    chain.projection = g.projection;    // the initial coocs are known now
+                    chain.trackCoocs();
+                }
+                chain.publishSampleTo(g); // or publish the one the producer has generated in the meantime
+            }
         } else ready = true;              // otherwise enable random walks for the next step
     }
     
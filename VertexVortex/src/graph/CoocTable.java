@@ -0,0 +1,154 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Co-occurrences of the pairs of actors tracked by a projection, kept up to date while the sampler
+ * moves events between actors. If an event moves from one actor to another, the co-occurrence of
+ * the first actor with every other actor of the event decreases by one, and that of the second
+ * actor increases by one. No other pair changes, so the projection can read the co-occurrences of
+ * each sample from the table instead of intersecting adjacency lists.
+ */
+public class CoocTable {
+    private int[][] partners;   // partners[n] contains the IDs of the actors tracked with actor n (all larger than n, ascending)
+    public int[][] coocs;       // coocs[n][i] is the co-occurrence of actor n and actor partners[n][i] in the current graph
+    private int[][] members;    // members[e] contains all actors connected to event e (in no particular order)
+
+    /**
+     * Creates the table for the tracked pairs of a projection on a graph
+     * @param adjList adjacency lists of the graph
+     * @param eventCount number of events of the graph
+     * @param result result structure of the projection consisting of triples (actorID, initial co-occurrence,
+     *               counter). The initial co-occurrences have to match the adjacency lists.
+     */
+    public CoocTable(int[][] adjList, int eventCount, int[][] result) {
+        partners = new int[result.length][];
+        coocs = new int[result.length][];
+        for (int a=0; a<result.length; a++) {
+            partners[a] = new int[result[a].length/3];
+            coocs[a] = new int[result[a].length/3];
+            for (int i=0; i<partners[a].length; i++) {
+                partners[a][i] = result[a][3*i];
+                coocs[a][i] = result[a][3*i+1];
+            }
+        }
+        members = new int[eventCount][];
+        buildMembers(adjList);
+    }
+
+    /**
+     * Creates a table holding a copy of the co-occurrences of another one, e.g. to publish a sample.
+     * The copy cannot track moves.
+     */
+    private CoocTable(CoocTable source) {
+        partners = source.partners;
+        coocs = new int[source.coocs.length][];
+        for (int a=0; a<coocs.length; a++) {
+            coocs[a] = source.coocs[a].clone();
+        }
+    }
+
+    /**
+     * Fills the lists of actors connected to each event from the adjacency lists
+     */
+    private void buildMembers(int[][] adjList) {
+        int[] size = new int[members.length];
+        for (int[] list : adjList) {
+            for (int e : list) size[e]++;
+        }
+        for (int e=0; e<members.length; e++) {
+            members[e] = new int[size[e]];
+            size[e] = 0;
+        }
+        for (int a=0; a<adjList.length; a++) {
+            for (int e : adjList[a]) members[e][size[e]++] = a;
+        }
+    }
+
+    /**
+     * Recomputes the whole table after the adjacency lists were replaced, e.g. by a warm start
+     * @param adjList sorted adjacency lists of the graph
+     */
+    public void rebuild(int[][] adjList) {
+        buildMembers(adjList);
+        for (int a=0; a<partners.length; a++) {
+            for (int i=0; i<partners[a].length; i++) {
+                coocs[a][i] = Graph.computeCooc(adjList[a], adjList[partners[a][i]]);
+            }
+        }
+    }
+
+    /**
+     * Updates the table after an event was moved from one actor to another. The second actor
+     * must not have been connected to the event before.
+     * @param e event ID
+     * @param from ID of the actor that lost the event
+     * @param to ID of the actor that gained the event
+     */
+    public void moveEvent(int e, int from, int to) {
+        int[] m = members[e];
+        for (int k=0; k<m.length; k++) {
+            int x = m[k];
+            if (x == from) {
+                m[k] = to;                  // the event now belongs to the other actor
+            } else {
+                add(from, x, -1);           // the actors no longer share this event
+                add(to, x, 1);              // but these do
+            }
+        }
+    }
+
+    /**
+     * Changes the co-occurrence of two actors if their pair is tracked
+     */
+    private void add(int ac1, int ac2, int delta) {
+        int a = Math.min(ac1, ac2);
+        int i = Arrays.binarySearch(partners[a], Math.max(ac1, ac2));
+        if (i >= 0) coocs[a][i] += delta;
+    }
+
+    /**
+     * @return copy of the co-occurrences of this table
+     */
+    public CoocTable copy() {
+        return new CoocTable(this);
+    }
+
+    /**
+     * Copies the co-occurrences of this table to another one for the same pairs
+     * @param target table the co-occurrences are copied to
+     */
+    public void copyCoocsTo(CoocTable target) {
+        for (int a=0; a<coocs.length; a++) {
+            System.arraycopy(coocs[a], 0, target.coocs[a], 0, coocs[a].length);
+        }
+    }
+
+    /**
+     * Exchanges the co-occurrences of this table with those of another one for the same pairs
+     * @param other table the co-occurrences are exchanged with
+     */
+    public void exchangeCoocs(CoocTable other) {
+        int[][] mine = coocs;
+        coocs = other.coocs;
+        other.coocs = mine;
+    }
+}
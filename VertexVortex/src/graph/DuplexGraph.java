@@ -21,6 +21,8 @@ package graph;
 import java.util.Arrays;
 import java.util.HashSet;
 
+import projection.abstr.CoocIndex;
+
 /**
  * Class used to store all data related to one duplex network
  */
@@ -41,34 +43,579 @@ public class DuplexGraph extends Graph {
     public int[] offsetNeg;
     public int edgeCountPos;    // number of positive edges
     public int edgeCountNeg;
+    private int[] tradePool;    // buffers used by curveball trades: events only one of the two actors has
+    private int[] tradeIndex1;  // and their positions in the adjacency lists of the first
+    private int[] tradeIndex2;  // and second actor
+    private int[][] adjListSigned;  // adjListSigned[n] contains the events of actor n with their sign: 2*event for positive
+                                    // and 2*event+1 for negative edges, SORTED in ASCENDING order (used by edge swaps)
+    private int[] edgeMapSigned;    // maps each edge of adjListSigned to its actor, like edgeMapPos
+    private int[] offsetSigned;     // number of edges of both signs of all previous actors, like offsetPos
+    private boolean signed;         // true if edge swaps are performed on adjListSigned
+    public CoocIndex posIndex;      // actors of each event by positive edges in the current sample, updated with every
+    public CoocIndex negIndex;      // sample, negIndex by negative edges (only if the projection counts coocs by scanning events)
     
     /**
      * Implements a markov chain to sample a new graph with
      * identical degree sequences.
+     * @param count number of steps to perform
+     * @return number of steps that changed the graph
      */
-    public void createNextSample() {
-        for (int i=0; i<steps; i++) {        // for the selected number of steps
+    protected int performSteps(int count) {
+        if (settings.getSampler().equals("curveball")) return curveballSteps(count);
+        if (settings.getSampler().equals("parallel")) return parallelSteps(count);
+        if (settings.getHashedAdjacency()) return hashedSteps(count);
+        if (signed) return signedSteps(count);
+        int accepted = 0;                    // number of swaps performed
+        for (int i=0; i<count; i++) {        // for the selected number of steps
             /* Decide which of the two graphs to pick edges from for swapping. Since the number
              * of edges in both graphs does not need to be identical the random value has to be weighted
              * by the number of edges in each adjacency list. */
             int r1 = random.nextInt(edgeCount);           // pick a random edge
+            int[][] adjList, oppList;                     // adjacency lists of the sign of this edge and of the other sign
+            int ac1, ac2, index1, index2;
             if (r1<edgeCountPos) {                        // if this edge is positive
                 int r2 = random.nextInt(edgeCountPos);    // pick another positive edge
-                int ac1 = edgeMapPos[r1];                 // find the corresponding actor IDs
-                int ac2 = edgeMapPos[r2];
-                /* check if the two edges can be swapped. If that is the case, do so */
-                binarySwap(adjListPos[ac1], r1-offsetPos[ac1], adjListPos[ac2], r2-offsetPos[ac2],
-                                           adjListNeg[ac1], adjListNeg[ac2]);
-            } else {                                        // otherwise, the edge is negative
+                ac1 = edgeMapPos[r1];                     // find the corresponding actor IDs
+                ac2 = edgeMapPos[r2];
+                index1 = r1-offsetPos[ac1];
+                index2 = r2-offsetPos[ac2];
+                adjList = adjListPos;
+                oppList = adjListNeg;
+            } else {                                      // otherwise, the edge is negative
                 r1 = r1 - edgeCountPos;                   // so adjust it accordingly
                 int r2 = random.nextInt(edgeCountNeg);    // and pick another negative edge
-                int ac1 = edgeMapNeg[r1];                 // find the corresponding actor IDs
-                int ac2 = edgeMapNeg[r2];
-                /* check if the two edges can be swapped. If that is the case, do so */
-                binarySwap(adjListNeg[ac1], r1-offsetNeg[ac1], adjListNeg[ac2], r2-offsetNeg[ac2],
-                                           adjListPos[ac1], adjListPos[ac2]);
+                ac1 = edgeMapNeg[r1];                     // find the corresponding actor IDs
+                ac2 = edgeMapNeg[r2];
+                index1 = r1-offsetNeg[ac1];
+                index2 = r2-offsetNeg[ac2];
+                adjList = adjListNeg;
+                oppList = adjListPos;
+            }
+            int item1 = adjList[ac1][index1];
+            int item2 = adjList[ac2][index2];
+            /* check if the two edges can be swapped. If that is the case, do so */
+            if (binarySwap(adjList[ac1], index1, adjList[ac2], index2, oppList[ac1], oppList[ac2])) {
+                markChanged(ac1, ac2);
+                if (posIndex != null) {
+                    CoocIndex index = (adjList == adjListPos) ? posIndex : negIndex;
+                    index.moveEvent(item1, ac1, ac2);
+                    index.moveEvent(item2, ac2, ac1);
+                }
+                accepted++;
             }
         }
+        return accepted;
+    }
+    
+    /**
+     * Implements the same markov chain as performSteps on one list of signed events per actor
+     * (adjacency=signed). One binary search per actor checks for an edge of either sign, but the
+     * edges are drawn in a different order, so a seed gives other samples than performSteps.
+     * @param count number of steps to perform
+     * @return number of steps that changed the graph
+     */
+    private int signedSteps(int count) {
+        int accepted = 0;                    // number of swaps performed
+        for (int i=0; i<count; i++) {        // for the selected number of steps
+            /* pick a random edge among the edges of both signs and another random edge with the same sign.
+             * Drawing the second edge among all edges until the sign matches picks it uniformly among the
+             * edges of that sign, as the signed lists do not keep the edges of one sign together */
+            int r1 = random.nextInt(edgeCount);
+            int ac1 = edgeMapSigned[r1];                  // find the corresponding actor IDs
+            int index1 = r1-offsetSigned[ac1];
+            int sign = adjListSigned[ac1][index1] & 1;
+            int r2, ac2, index2;
+            int[] list2;
+            do {
+                r2 = random.nextInt(edgeCount);
+                ac2 = edgeMapSigned[r2];
+                index2 = r2-offsetSigned[ac2];
+                list2 = adjListSigned[ac2];
+            } while ((list2[index2] & 1) != sign);
+            int item1 = adjListSigned[ac1][index1];
+            int item2 = list2[index2];
+            /* check if the two edges can be swapped. If that is the case, do so */
+            if (signedSwap(adjListSigned[ac1], index1, list2, index2)) {
+                markChanged(ac1, ac2);
+                if (posIndex != null) {
+                    CoocIndex index = (sign == 0) ? posIndex : negIndex;
+                    index.moveEvent(item1 >> 1, ac1, ac2);
+                    index.moveEvent(item2 >> 1, ac2, ac1);
+                }
+                accepted++;
+            }
+        }
+        splitSignedLists();
+        return accepted;
+    }
+    
+    /**
+     * Checks for the existence of edges of either sign and swaps target nodes of two edges with the
+     * same sign if new edges don't exist. As events are stored with their sign in one sorted list per
+     * actor, one binary search per actor decides if the actor is connected to an event.
+     * 
+     * Input arrays must be SORTED in ascending order. This order will not be
+     * changed by a call to this function.
+     * 
+     * @param actor1 signed events of the first actor
+     * @param index1in1 index of an item in the array given by actor1
+     * @param actor2 signed events of the second actor
+     * @param index2in2 index of an item in the array given by actor2, with the same sign
+     * @return true if the edges were swapped
+     */
+    private static boolean signedSwap(int[] actor1, int index1in1, int[] actor2, int index2in2) {
+        int item2 = actor2[index2in2];
+        int index2in1 = findEvent(actor1, item2);
+        if (index2in1 >= 0) return false;                   // if an edge to the event already exists: do nothing
+        int item1 = actor1[index1in1];
+        int index1in2 = findEvent(actor2, item1);
+        if (index1in2 >= 0) return false;
+        
+        index2in1 = -(++index2in1); // convert insertionPoint to actual index
+        index1in2 = -(++index1in2);
+        
+        // insert item1 in the correct spot in actor2 and keep the array sorted
+        if (index1in2 <= index2in2) {                   // if insertion point is to the left of the removed item
+            for (int i=index2in2; i>index1in2; i--) {   // shuffle elements between both indices to the right
+                actor2[i] = actor2[i-1];
+            }
+        } else {                                        // else if insertion point is to the right of removed item
+            index1in2--;                                // adjust insertion point
+            for (int i = index2in2; i<index1in2; i++) { // shuffle elements between both indices to the left
+                actor2[i] = actor2[i+1];
+            }
+        }
+        actor2[index1in2] = item1;                      // insert new item
+        
+        // insert item2 in the correct spot in actor1 and keep the array sorted
+        if (index2in1 <= index1in1) {
+            for (int i=index1in1; i>index2in1; i--) {
+                actor1[i] = actor1[i-1];
+            }
+        } else {
+            index2in1--;
+            for (int i = index1in1; i<index2in1; i++) {
+                actor1[i] = actor1[i+1];
+            }
+        }
+        actor1[index2in1] = item2;
+        return true;
+    }
+    
+    /**
+     * Searches a list of signed events for an event with either sign
+     * @param list signed events of an actor, sorted in ascending order
+     * @param item signed event
+     * @return index of the event if it is contained with either sign, or (-(insertion point) - 1)
+     *         like Arrays.binarySearch. The insertion point is the same for both signs.
+     */
+    private static int findEvent(int[] list, int item) {
+        int index = Arrays.binarySearch(list, item & ~1);   // the positive edge is stored first
+        if (index >= 0) return index;
+        int insert = -(index + 1);
+        if (insert < list.length && list[insert] == (item | 1)) return insert;  // followed by the negative one
+        return index;
+    }
+    
+    /**
+     * Creates the signed adjacency lists and their edge maps from the positive and negative ones
+     */
+    private void buildSignedLists() {
+        adjListSigned = new int[actorCount][];
+        offsetSigned = new int[actorCount];
+        edgeMapSigned = new int[edgeCount];
+        int position = 0;
+        for (int a=0; a<actorCount; a++) {
+            int[] pos = adjListPos[a];
+            int[] neg = adjListNeg[a];
+            int[] list = new int[degreesPos[a] + degreesNeg[a]];
+            int p = 0;                                      // merge both sorted lists
+            int n = 0;
+            for (int k=0; k<list.length; k++) {
+                if (n == neg.length || (p < pos.length && pos[p] < neg[n])) list[k] = 2*pos[p++];
+                else list[k] = 2*neg[n++] + 1;
+            }
+            adjListSigned[a] = list;
+            offsetSigned[a] = position;
+            for (int k=0; k<list.length; k++) edgeMapSigned[position++] = a;
+        }
+    }
+    
+    /**
+     * Writes the signed adjacency lists back to the positive and negative ones used by the projection
+     */
+    private void splitSignedLists() {
+        for (int a=0; a<actorCount; a++) {
+            int[] pos = adjListPos[a];
+            int[] neg = adjListNeg[a];
+            int p = 0;
+            int n = 0;
+            for (int item : adjListSigned[a]) {             // both stay sorted
+                if ((item & 1) == 0) pos[p++] = item >> 1;
+                else neg[n++] = item >> 1;
+            }
+        }
+    }
+    
+    /**
+     * Implements the same markov chain as performSteps, but uses one hash set per actor
+     * containing both its positive and negative events to check for existing edges.
+     * Swapped events simply replace each other in the adjacency lists, which are sorted
+     * once the sample is complete.
+     */
+    private int hashedSteps(int count) {
+        int accepted = 0;                                 // number of swaps performed
+        for (int i=0; i<count; i++) {                     // for the selected number of steps
+            int r1 = random.nextInt(edgeCount);           // pick a random edge
+            int[][] adjList;                              // adjacency lists of the sign of this edge
+            int ac1, ac2, index1, index2;
+            if (r1<edgeCountPos) {                        // if this edge is positive
+                int r2 = random.nextInt(edgeCountPos);    // pick another positive edge
+                ac1 = edgeMapPos[r1];                     // find the corresponding actor IDs
+                ac2 = edgeMapPos[r2];
+                index1 = r1-offsetPos[ac1];
+                index2 = r2-offsetPos[ac2];
+                adjList = adjListPos;
+            } else {                                      // otherwise, the edge is negative
+                r1 = r1 - edgeCountPos;                   // so adjust it accordingly
+                int r2 = random.nextInt(edgeCountNeg);    // and pick another negative edge
+                ac1 = edgeMapNeg[r1];                     // find the corresponding actor IDs
+                ac2 = edgeMapNeg[r2];
+                index1 = r1-offsetNeg[ac1];
+                index2 = r2-offsetNeg[ac2];
+                adjList = adjListNeg;
+            }
+            int item1 = adjList[ac1][index1];
+            int item2 = adjList[ac2][index2];
+            if (hashedSwap(adjList, ac1, index1, ac2, index2)) {
+                markChanged(ac1, ac2);
+                if (posIndex != null) {
+                    CoocIndex index = (adjList == adjListPos) ? posIndex : negIndex;
+                    index.moveEvent(item1, ac1, ac2);
+                    index.moveEvent(item2, ac2, ac1);
+                }
+                accepted++;
+            }
+        }
+        sortChangedLists();
+        return accepted;
+    }
+    
+    /**
+     * Swaps target nodes of two edges of the same sign if no edge of either sign exists between
+     * the actors and their new events. The swapped events replace each other, so the lists may
+     * become unsorted.
+     * @param adjList adjacency lists of the sign of both edges
+     * @param ac1 ID of the first actor
+     * @param index1 index of an item in the adjacency list of the first actor
+     * @param ac2 ID of the second actor
+     * @param index2 index of an item in the adjacency list of the second actor
+     * @return true if the edges were swapped
+     */
+    private boolean hashedSwap(int[][] adjList, int ac1, int index1, int ac2, int index2) {
+        int item1 = adjList[ac1][index1];
+        int item2 = adjList[ac2][index2];
+        if (eventSets[ac1].contains(item2) || eventSets[ac2].contains(item1)) return false;
+        adjList[ac1][index1] = item2;
+        adjList[ac2][index2] = item1;
+        eventSets[ac1].remove(item1);
+        eventSets[ac1].add(item2);
+        eventSets[ac2].remove(item2);
+        eventSets[ac2].add(item1);
+        unsorted[ac1] = true;
+        unsorted[ac2] = true;
+        return true;
+    }
+    
+    /**
+     * Implements the same markov chain as performSteps, but applies the swaps in batches.
+     * Proposals are drawn in order and added to the current batch if they do not touch an actor
+     * of another proposal in the batch. Conflicting proposals are deferred to the next batch.
+     * All proposals of a batch touch disjoint actors and are applied in parallel.
+     * A proposal is stored as the index of the first edge among all edges, which also
+     * determines the sign, and the index of the second edge among the edges of that sign.
+     */
+    private int parallelSteps(int count) {
+        int accepted = 0;                               // number of swaps performed
+        int drawn = 0;                                  // number of proposals drawn so far
+        int deferredCount = 0;                          // number of proposals waiting for a later batch
+        while (drawn < count || deferredCount > 0) {
+            newBatch();
+            int size = 0;                               // number of proposals in this batch
+            int waiting = 0;                            // number of proposals deferred again
+            for (int k=0; k<deferredCount; k++) {       // deferred proposals go first, in the order they were drawn
+                int r1 = deferred1[k];
+                int r2 = deferred2[k];
+                if (claim(firstActor(r1), secondActor(r1, r2))) {
+                    batch1[size] = r1;
+                    batch2[size++] = r2;
+                } else {
+                    deferred1[waiting] = r1;
+                    deferred2[waiting++] = r2;
+                }
+            }
+            deferredCount = waiting;
+            while (size + deferredCount < batchSize && drawn < count) {    // fill the batch with new proposals
+                int r1 = random.nextInt(edgeCount);     // pick a random edge and another one of the same sign
+                int r2 = random.nextInt(r1<edgeCountPos ? edgeCountPos : edgeCountNeg);
+                drawn++;
+                int ac1 = firstActor(r1);
+                int ac2 = secondActor(r1, r2);
+                if (ac1 == ac2) continue;               // swaps within one actor never change anything
+                if (claim(ac1, ac2)) {
+                    batch1[size] = r1;
+                    batch2[size++] = r2;
+                } else {
+                    deferred1[deferredCount] = r1;
+                    deferred2[deferredCount++] = r2;
+                }
+            }
+            accepted += applyBatch(size);
+        }
+        if (settings.getHashedAdjacency()) sortChangedLists();
+        return accepted;
+    }
+    
+    /**
+     * @param r1 index of the first edge of a proposal among all edges
+     * @return ID of the actor of the first edge
+     */
+    private int firstActor(int r1) {
+        return (r1<edgeCountPos) ? edgeMapPos[r1] : edgeMapNeg[r1-edgeCountPos];
+    }
+    
+    /**
+     * @param r1 index of the first edge of a proposal among all edges
+     * @param r2 index of the second edge of a proposal among the edges of the same sign
+     * @return ID of the actor of the second edge
+     */
+    private int secondActor(int r1, int r2) {
+        return (r1<edgeCountPos) ? edgeMapPos[r2] : edgeMapNeg[r2];
+    }
+    
+    /**
+     * Applies a range of the swap proposals of the current batch
+     */
+    int applyProposals(int from, int to) {
+        int accepted = 0;
+        for (int k=from; k<to; k++) {
+            int r1 = batch1[k];
+            int r2 = batch2[k];
+            int ac1 = firstActor(r1);
+            int ac2 = secondActor(r1, r2);
+            boolean swapped;
+            if (r1<edgeCountPos) {                      // positive edges
+                if (settings.getHashedAdjacency()) swapped = hashedSwap(adjListPos, ac1, r1-offsetPos[ac1], ac2, r2-offsetPos[ac2]);
+                else swapped = binarySwap(adjListPos[ac1], r1-offsetPos[ac1], adjListPos[ac2], r2-offsetPos[ac2],
+                                                           adjListNeg[ac1], adjListNeg[ac2]);
+            } else {                                    // negative edges
+                r1 = r1 - edgeCountPos;
+                if (settings.getHashedAdjacency()) swapped = hashedSwap(adjListNeg, ac1, r1-offsetNeg[ac1], ac2, r2-offsetNeg[ac2]);
+                else swapped = binarySwap(adjListNeg[ac1], r1-offsetNeg[ac1], adjListNeg[ac2], r2-offsetNeg[ac2],
+                                                           adjListPos[ac1], adjListPos[ac2]);
+            }
+            if (swapped) {
+                markChanged(ac1, ac2);
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+    
+    /**
+     * Restores the sorting of all adjacency lists changed by the hashed sampler for the projection
+     */
+    private void sortChangedLists() {
+        for (int a=0; a<actorCount; a++) {
+            if (unsorted[a]) {
+                Arrays.sort(adjListPos[a]);
+                Arrays.sort(adjListNeg[a]);
+                unsorted[a] = false;
+            }
+        }
+    }
+    
+    /**
+     * Implements the curveball markov chain to sample a new graph with identical degree
+     * sequences. In each step two random actors trade a random subset of the events of one sign
+     * only one of them is connected to. Events the other actor is connected to with the
+     * opposite sign are excluded from the trade, so no conflicting edges are created.
+     */
+    private int curveballSteps(int count) {
+        if (actorCount < 2) return 0;                   // nobody to trade with
+        int accepted = 0;                               // number of trades that exchanged events
+        for (int i=0; i<count; i++) {                   // for the selected number of trades
+            /* pick the sign of the traded events weighted by the number of edges of that sign,
+             * then two distinct random actors */
+            boolean positive = random.nextInt(edgeCount) < edgeCountPos;
+            int ac1 = random.nextInt(actorCount);
+            int ac2 = random.nextInt(actorCount-1);
+            if (ac2 >= ac1) ac2++;
+            boolean traded;
+            if (positive) traded = curveballTrade(adjListPos, adjListNeg, ac1, ac2);
+            else traded = curveballTrade(adjListNeg, adjListPos, ac1, ac2);
+            if (traded) {
+                markChanged(ac1, ac2);
+                accepted++;
+            }
+        }
+        if (settings.getHashedAdjacency()) sortChangedLists();
+        return accepted;
+    }
+    
+    /**
+     * Performs one curveball trade between two actors on the adjacency lists of one sign.
+     * The events only one of the actors is connected to (with any sign) are shuffled and
+     * redistributed, so both keep their degrees.
+     * @param adjList adjacency lists of the sign that is traded
+     * @param oppList adjacency lists of the opposite sign
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return true if there were events to trade
+     */
+    private boolean curveballTrade(int[][] adjList, int[][] oppList, int ac1, int ac2) {
+        int[] list1 = adjList[ac1];
+        int[] list2 = adjList[ac2];
+        int n1 = 0;                                     // number of events that can move from ac1 to ac2
+        int n2 = 0;                                     // number of events that can move from ac2 to ac1
+        if (settings.getHashedAdjacency()) {            // find the events the other actor has no edge to
+            for (int k=0; k<list1.length; k++) {
+                if (!eventSets[ac2].contains(list1[k])) tradeIndex1[n1++] = k;
+            }
+            for (int k=0; k<list2.length; k++) {
+                if (!eventSets[ac1].contains(list2[k])) tradeIndex2[n2++] = k;
+            }
+        } else {                                        // by merging both sorted lists
+            int pos1 = 0;                               // and checking the opposite sign
+            int pos2 = 0;
+            while (pos1 < list1.length && pos2 < list2.length) {
+                if (list1[pos1] < list2[pos2]) {
+                    if (Arrays.binarySearch(oppList[ac2], list1[pos1]) < 0) tradeIndex1[n1++] = pos1;
+                    pos1++;
+                } else if (list1[pos1] > list2[pos2]) {
+                    if (Arrays.binarySearch(oppList[ac1], list2[pos2]) < 0) tradeIndex2[n2++] = pos2;
+                    pos2++;
+                } else {
+                    pos1++;
+                    pos2++;
+                }
+            }
+            for (; pos1 < list1.length; pos1++) {
+                if (Arrays.binarySearch(oppList[ac2], list1[pos1]) < 0) tradeIndex1[n1++] = pos1;
+            }
+            for (; pos2 < list2.length; pos2++) {
+                if (Arrays.binarySearch(oppList[ac1], list2[pos2]) < 0) tradeIndex2[n2++] = pos2;
+            }
+        }
+        if (n1 == 0 || n2 == 0) return false;           // nothing can be traded
+        
+        // put all tradable events in a pool and draw the n1 events for ac1 from it
+        for (int k=0; k<n1; k++) tradePool[k] = list1[tradeIndex1[k]];
+        for (int k=0; k<n2; k++) tradePool[n1+k] = list2[tradeIndex2[k]];
+        int poolSize = n1 + n2;
+        for (int k=0; k<n1; k++) {                      // partial Fisher-Yates shuffle
+            int r = k + random.nextInt(poolSize - k);
+            int tmp = tradePool[k];
+            tradePool[k] = tradePool[r];
+            tradePool[r] = tmp;
+        }
+        
+        if (posIndex != null) {                         // move the events that changed hands in the event index
+            CoocIndex index = (adjList == adjListPos) ? posIndex : negIndex;
+            for (int k=n1; k<poolSize; k++) {           // events from ac1 that now belong to ac2
+                if (hasEvent(ac1, list1, tradePool[k])) index.moveEvent(tradePool[k], ac1, ac2);
+            }
+            for (int k=0; k<n1; k++) {                  // events from ac2 that now belong to ac1
+                if (!hasEvent(ac1, list1, tradePool[k])) index.moveEvent(tradePool[k], ac2, ac1);
+            }
+        }
+        if (settings.getHashedAdjacency()) {            // update the hash sets of both actors
+            for (int k=n1; k<poolSize; k++) {           // events from ac1 that now belong to ac2
+                if (eventSets[ac1].contains(tradePool[k])) {
+                    eventSets[ac1].remove(tradePool[k]);
+                    eventSets[ac2].add(tradePool[k]);
+                }
+            }
+            for (int k=0; k<n1; k++) {                  // events from ac2 that now belong to ac1
+                if (!eventSets[ac1].contains(tradePool[k])) {
+                    eventSets[ac2].remove(tradePool[k]);
+                    eventSets[ac1].add(tradePool[k]);
+                }
+            }
+        }
+        // write the new events to the positions of the traded ones
+        for (int k=0; k<n1; k++) list1[tradeIndex1[k]] = tradePool[k];
+        for (int k=0; k<n2; k++) list2[tradeIndex2[k]] = tradePool[n1+k];
+        if (settings.getHashedAdjacency()) {
+            unsorted[ac1] = true;
+            unsorted[ac2] = true;
+        } else {
+            Arrays.sort(list1);
+            Arrays.sort(list2);
+        }
+        return true;
+    }
+    
+    /**
+     * Checks if an actor is connected to an event it could trade, i.e. not to its opposite sign
+     * @param a actor ID
+     * @param list adjacency list of the actor with the sign that is traded
+     * @param e event ID
+     * @return true if the event is in the list
+     */
+    private boolean hasEvent(int a, int[] list, int e) {
+        if (settings.getHashedAdjacency()) return eventSets[a].contains(e);
+        return Arrays.binarySearch(list, e) >= 0;
+    }
+    
+    /**
+     * Initializes the random number generator, the hash sets of all actors for hashed adjacency,
+     * the signed adjacency lists for sorted edge swaps and the buffers used by curveball trades
+     * or parallel swaps
+     */
+    public void initBeforeSampling() {
+        super.initBeforeSampling();
+        if (settings.getHashedAdjacency()) {
+            buildEventSets();
+            unsorted = new boolean[actorCount];
+        }
+        if (settings.getSampler().equals("curveball")) {    // allocate buffers for trades
+            int maxDegree = 0;
+            for (int a=0; a<actorCount; a++) {
+                maxDegree = Math.max(maxDegree, Math.max(degreesPos[a], degreesNeg[a]));
+            }
+            tradePool = new int[2*maxDegree];
+            tradeIndex1 = new int[maxDegree];
+            tradeIndex2 = new int[maxDegree];
+        }
+        if (settings.getSampler().equals("parallel")) initParallelSwaps();
+        signed = settings.getSignedAdjacency() && settings.getSampler().equals("swap") && !settings.getHashedAdjacency();
+        if (signed) buildSignedLists();
+    }
+    
+    /**
+     * Rebuilds the hash sets, signed adjacency lists or event indices after the adjacency lists were replaced
+     */
+    protected void adjacencyChanged() {
+        super.adjacencyChanged();
+        if (signed) buildSignedLists();
+        if (posIndex != null && !settings.getSampler().equals("parallel")) {
+            posIndex.rebuild(adjListPos);
+            negIndex.rebuild(adjListNeg);
+        }
+    }
+    
+    /**
+     * Creates the hash sets of all actors from their adjacency lists
+     */
+    protected void buildEventSets() {
+        eventSets = new EventSet[actorCount];
+        for (int a=0; a<actorCount; a++) {
+            int[] events = new int[degreesPos[a] + degreesNeg[a]];  // one set for events of both signs
+            System.arraycopy(adjListPos[a], 0, events, 0, degreesPos[a]);
+            System.arraycopy(adjListNeg[a], 0, events, degreesPos[a], degreesNeg[a]);
+            eventSets[a] = new EventSet(events);
+        }
     }
     
     /**
@@ -81,18 +628,19 @@ public class DuplexGraph extends Graph {
      * @param index1in1 index of an item in the array given by user1
      * @param actor2 Array containing all items connected to a second user
      * @param index2in2 index of an item in the array given by user2
+     * @return true if the edges were swapped
      */
-    private static void binarySwap(int[] actor1, int index1in1, int[] actor2, int index2in2, int[] oppActor1, int[] oppActor2) {
+    private static boolean binarySwap(int[] actor1, int index1in1, int[] actor2, int index2in2, int[] oppActor1, int[] oppActor2) {
         int item2 = actor2[index2in2];
         int index2in1 = Arrays.binarySearch(actor1, item2);
-        if (index2in1 >= 0) return;                         // if new edge already exists: do nothing
+        if (index2in1 >= 0) return false;                   // if new edge already exists: do nothing
         int item1 = actor1[index1in1];
         int index1in2 = Arrays.binarySearch(actor2, item1);
-        if (index1in2  >= 0) return;                        // if new edge already exists: do nothing
+        if (index1in2  >= 0) return false;                  // if new edge already exists: do nothing
         
         // check if the new edge already exists in the other (positive/negative) adjacency list and if so: abort
-        if (Arrays.binarySearch(oppActor1, item2) >= 0) return;
-        if (Arrays.binarySearch(oppActor2, item1) >= 0) return;
+        if (Arrays.binarySearch(oppActor1, item2) >= 0) return false;
+        if (Arrays.binarySearch(oppActor2, item1) >= 0) return false;
 
         /* If we get to this point, both binary searches returned negative
          * index2in1 contains the InsertionPoint for item2 in user1
@@ -127,6 +675,149 @@ public class DuplexGraph extends Graph {
             }
         }
         actor1[index2in1] = item2;
+        return true;
+    }
+    
+    /**
+     * Creates a copy of this graph with private adjacency lists for an independent chain
+     */
+    public Graph createChainCopy() {
+        DuplexGraph copy = new DuplexGraph();
+        copySettingsTo(copy);
+        copy.adjListPos = new int[actorCount][];
+        copy.adjListNeg = new int[actorCount][];
+        for (int i=0; i<actorCount; i++) {
+            copy.adjListPos[i] = adjListPos[i].clone();     // adjacency lists are changed by the chain
+            copy.adjListNeg[i] = adjListNeg[i].clone();
+        }
+        copy.degreesPos = degreesPos;                       // everything else stays fixed during sampling
+        copy.degreesNeg = degreesNeg;
+        copy.edgeMapPos = edgeMapPos;
+        copy.edgeMapNeg = edgeMapNeg;
+        copy.offsetPos = offsetPos;
+        copy.offsetNeg = offsetNeg;
+        copy.edgeCountPos = edgeCountPos;
+        copy.edgeCountNeg = edgeCountNeg;
+        if (posIndex != null) {
+            copy.posIndex = new CoocIndex(copy.adjListPos, eventCount);
+            copy.negIndex = new CoocIndex(copy.adjListNeg, eventCount);
+        }
+        return copy;
+    }
+    
+    /**
+     * Copies the current adjacency lists to another duplex graph
+     */
+    public void copyAdjacencyTo(Graph target) {
+        DuplexGraph t = (DuplexGraph)target;
+        for (int i=0; i<actorCount; i++) {
+            System.arraycopy(adjListPos[i], 0, t.adjListPos[i], 0, degreesPos[i]);
+            System.arraycopy(adjListNeg[i], 0, t.adjListNeg[i], 0, degreesNeg[i]);
+        }
+        copySampleStateTo(target);
+        if (t.posIndex != null) t.updateIndices();
+    }
+    
+    /**
+     * Exchanges the adjacency lists of both signs and the event indices with another duplex graph
+     */
+    protected void exchangeBuffers(Graph target) {
+        DuplexGraph t = (DuplexGraph)target;
+        int[][] lists = t.adjListPos;
+        t.adjListPos = adjListPos;
+        adjListPos = lists;
+        lists = t.adjListNeg;
+        t.adjListNeg = adjListNeg;
+        adjListNeg = lists;
+        if (posIndex != null) {
+            CoocIndex index = t.posIndex;
+            t.posIndex = posIndex;
+            posIndex = index;
+            index = t.negIndex;
+            t.negIndex = negIndex;
+            negIndex = index;
+        } else if (t.posIndex != null) {
+            /* the projection chose to scan after the chain was copied, so the chain creates its own
+             * indices when it catches up. Until then the indices of the target are updated in place */
+            t.updateIndices();
+        }
+    }
+    
+    /**
+     * Copies the lists of the changed actors and updates the event indices like the sampler does
+     */
+    protected void catchUp(Graph source) {
+        DuplexGraph s = (DuplexGraph)source;
+        for (int a=0; a<actorCount; a++) {
+            if (!changed[a]) continue;
+            System.arraycopy(s.adjListPos[a], 0, adjListPos[a], 0, degreesPos[a]);
+            System.arraycopy(s.adjListNeg[a], 0, adjListNeg[a], 0, degreesNeg[a]);
+        }
+        if (posIndex != null) {
+            updateIndices();
+        } else if (s.posIndex != null) {
+            posIndex = new CoocIndex(adjListPos, eventCount);
+            negIndex = new CoocIndex(adjListNeg, eventCount);
+        }
+    }
+    
+    /**
+     * Updates the event lists of the changed actors in the event indices after parallel swaps.
+     * All other samplers move the events of their swaps in the indices one by one.
+     */
+    protected void sampleCompleted() {
+        if (posIndex != null && settings.getSampler().equals("parallel")) updateIndices();
+    }
+    
+    /**
+     * Brings the event indices up to date with the changed actors of the current sample
+     */
+    private void updateIndices() {
+        posIndex.update(adjListPos, changed);
+        negIndex.update(adjListNeg, changed);
+    }
+    
+    protected int actorDegree(int a) {
+        return degreesPos[a] + degreesNeg[a];
+    }
+    
+    /**
+     * Counts events both actors are connected to with the same sign
+     */
+    protected int probeCooc(int ac1, int ac2) {
+        return computeCooc(adjListPos[ac1], adjListPos[ac2]) + computeCooc(adjListNeg[ac1], adjListNeg[ac2]);
+    }
+    
+    /**
+     * Encodes each edge as (2 * actor + sign) * eventCount + event, where sign is 0 for positive
+     * and 1 for negative edges
+     */
+    protected long[] edgeKeys() {
+        long[] keys = new long[edgeCount];
+        int k = 0;
+        for (int a=0; a<actorCount; a++) {
+            for (int e : adjListPos[a]) keys[k++] = (2L*a) * eventCount + e;
+            for (int e : adjListNeg[a]) keys[k++] = (2L*a + 1) * eventCount + e;
+        }
+        return keys;
+    }
+    
+    /**
+     * Counts the edges present with the same sign in both graphs
+     */
+    protected int sharedEdges(long[] keys) {
+        int shared = 0;
+        int k = 0;
+        for (int a=0; a<actorCount; a++) {                      // merge the edges in the order of their keys
+            for (int sign=0; sign<2; sign++) {
+                for (int e : (sign == 0) ? adjListPos[a] : adjListNeg[a]) {
+                    long key = (2L*a + sign) * eventCount + e;
+                    while (k < keys.length && keys[k] < key) k++;
+                    if (k < keys.length && keys[k] == key) shared++;
+                }
+            }
+        }
+        return shared;
     }
     
     /**
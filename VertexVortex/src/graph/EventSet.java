@@ -0,0 +1,101 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Set of event IDs of one actor, implemented as open addressing hash table with linear probing.
+ * Used by the sampler to test for existing edges in constant time. The number of elements
+ * never changes during sampling, so the table is sized once to a load factor of at most 1/2.
+ */
+public class EventSet {
+    private static final int EMPTY = -1;    // marks a free slot. Event IDs are never negative
+    private int[] table;                    // hash table containing the event IDs
+    private int mask;                       // table length - 1, used instead of modulo
+
+    /**
+     * Creates a set containing the given events
+     * @param events event IDs, no duplicates allowed
+     */
+    public EventSet(int[] events) {
+        int capacity = Integer.highestOneBit(Math.max(events.length, 1)) << 2;   // at least twice the number of events
+        table = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(table, EMPTY);
+        for (int e : events) add(e);
+    }
+
+    /**
+     * Spreads the bits of an event ID so consecutive IDs do not form long probing runs
+     */
+    private static int hash(int e) {
+        int h = e * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param e event ID
+     * @return true if the event is contained in this set
+     */
+    public boolean contains(int e) {
+        int pos = hash(e) & mask;
+        while (table[pos] != EMPTY) {                   // probe until a free slot is found
+            if (table[pos] == e) return true;
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Adds an event to the set. The event must not be contained already.
+     * @param e event ID
+     */
+    public void add(int e) {
+        int pos = hash(e) & mask;
+        while (table[pos] != EMPTY) {
+            pos = (pos + 1) & mask;
+        }
+        table[pos] = e;
+    }
+
+    /**
+     * Removes an event from the set. The event must be contained.
+     * Entries following the removed one are shifted back so no tombstones are needed.
+     * @param e event ID
+     */
+    public void remove(int e) {
+        int pos = hash(e) & mask;
+        while (table[pos] != e) {                       // find the slot of the event
+            pos = (pos + 1) & mask;
+        }
+        int free = pos;
+        pos = (pos + 1) & mask;
+        while (table[pos] != EMPTY) {                   // for all entries in the probing run behind it
+            int home = hash(table[pos]) & mask;
+            // move the entry to the free slot unless its home slot lies cyclically in (free, pos]
+            if (((pos - home) & mask) >= ((pos - free) & mask)) {
+                table[free] = table[pos];
+                free = pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        table[free] = EMPTY;
+    }
+}
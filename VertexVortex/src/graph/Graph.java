@@ -18,7 +18,7 @@
 
 package graph;
 
-import java.util.Random;
+import java.util.Arrays;
 
 import projection.abstr.Projection;
 
@@ -26,8 +26,18 @@ import projection.abstr.Projection;
  * Abstract class used for storing all data related to one network
  */
 public abstract class Graph {
-    protected Random random;      // random number generator
+    protected RandomStream random; // random number generator
     public Projection projection; // implements methods for computation of projection data and stores it
+    protected EventSet[] eventSets;     // eventSets[n] contains all events of actor n (only for hashed adjacency)
+    protected boolean[] unsorted;       // unsorted[n] is true if the adjacency list of actor n needs to be sorted
+    protected int[] batch1;             // edges of the swap proposals in the current batch (only for parallel swaps)
+    protected int[] batch2;
+    protected int[] deferred1;          // edges of proposals that conflicted with the batch they were drawn for
+    protected int[] deferred2;
+    protected int batchSize;            // maximum number of proposals per batch
+    private int[] claimed;              // claimed[n] == stamp if actor n is touched by a proposal of the current batch
+    private int stamp;                  // ID of the current batch
+    private SwapWorkers swapWorkers;    // threads applying the batches (null if only one thread is used)
     
     /* REQUIRED DATA
      * (this needs to be present before passing the graph to an algorithm) */
@@ -48,6 +58,14 @@ public abstract class Graph {
     public String side;                       // side if the original edgelist that contains the actors (left or right)
     public String name;                       // name of the input file
     public boolean isSimplex;                 // true if graph is used for simplex projection, false for duplex
+    public SamplingSettings settings;         // settings of the sampler, the null model and the stopping rules, shared by all copies
+    public MixingMonitor mixing;              // mixing diagnostics of the chain, adapts the number of steps (null if steps are fixed
+                                              // and no target precision is set)
+    private boolean started;                  // true once the first sample has been generated
+    private Graph published;                  // graph the last sample was handed to by exchanging buffers, until the
+                                              // chain has brought the buffers it got back up to date (see publishSampleTo)
+    public double logWeight;                  // log importance weight of the current sample (0 for markov chains)
+    public boolean[] changed;                 // changed[n] is true if the adjacency of actor n changed with the current sample
     
     public void initSettings(int samples, int steps, int threads, int seed) {
         this.samples = samples;
@@ -57,7 +75,7 @@ public abstract class Graph {
     }
     
     /**
-     * Computes the co-occurrence of 2 actors by comparing their adjacency lists
+     * Computes the co-occurrence of 2 actors by intersecting their adjacency lists (see Intersection)
      * Input arrays are REQUIRED to be sorted in ascending order
      * 
      * @param adj1 sorted integer array containing all events connected to actor1
@@ -65,32 +83,274 @@ public abstract class Graph {
      * @return co-occurrence of actor1 and actor2
      */
     protected static int computeCooc(int[] adj1, int[] adj2) {
-        int cooc = 0;
-        int pos1 = 0;
-        int pos2 = 0;
-        while ( (pos1 < adj1.length) && (pos2 < adj2.length) ) {  // while neither list is empty
-            if (adj1[pos1] < adj2[pos2]) pos1++;                  // if one list has a smaller element at the first
-            else if (adj1[pos1] > adj2[pos2]) pos2++;             // position: advance in that list
-            else {              // otherwise, both lists have an identical element
-                cooc++;         // so increase cooc
-                pos1++;         // and advance in both lists
-                pos2++;
-            }
-        }
-        return cooc;
+        return Intersection.count(adj1, adj2);
     }
     
     /**
      * Called ONCE before the sampling begins.
-     * Used to initialize the random number generator.
+     * Used to initialize the random number generator from the random seed,
+     * unless a generator has been set with setRandom.
      */
     public void initBeforeSampling() {
-        random = new Random(randomSeed);
+        if (random == null) random = RandomStream.create(settings.getRng(), randomSeed);
+        changed = new boolean[actorCount];
+        if (settings.getMixingTarget() > 0 || settings.getPvalueTarget() > 0 || settings.getLeverageTarget() > 0) {
+            mixing = new MixingMonitor(this, settings.getMixingTarget());
+        }
+    }
+    
+    /**
+     * Sets the random number generator used for sampling, e.g. one split off for an independent chain
+     * @param random random number generator
+     */
+    public void setRandom(RandomStream random) {
+        this.random = random;
+    }
+    
+    /**
+     * Allocates the batch buffers and starts the worker threads used for parallel swaps.
+     * The batch size only depends on the number of actors, so the generated samples do not
+     * depend on the number of threads.
+     */
+    protected void initParallelSwaps() {
+        batchSize = Math.max(1, Math.min(4096, actorCount / 4));   // a batch touches at most actorCount/2 actors
+        batch1 = new int[batchSize];
+        batch2 = new int[batchSize];
+        deferred1 = new int[batchSize];
+        deferred2 = new int[batchSize];
+        claimed = new int[actorCount];
+        stamp = 0;
+        startWorkers();
+    }
+    
+    /**
+     * Starts the worker threads that apply batches in parallel if multiple threads are used
+     */
+    protected void startWorkers() {
+        if (threads > 1) swapWorkers = new SwapWorkers(this, threads);
+    }
+    
+    /**
+     * Starts a new batch of swap proposals. All actors are released.
+     */
+    protected void newBatch() {
+        stamp++;
+    }
+    
+    /**
+     * Tries to reserve two actors for a swap proposal of the current batch
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return true if neither actor is touched by another proposal of the batch yet
+     */
+    protected boolean claim(int ac1, int ac2) {
+        if (claimed[ac1] == stamp || claimed[ac2] == stamp) return false;
+        claimed[ac1] = stamp;
+        claimed[ac2] = stamp;
+        return true;
+    }
+    
+    /**
+     * Applies the first proposals of the batch buffers, in parallel if multiple threads are used
+     * @param size number of proposals in the batch
+     * @return number of proposals that changed the graph
+     */
+    protected int applyBatch(int size) {
+        if (size == 0) return 0;
+        if (swapWorkers == null) return applyProposals(0, size);
+        else return swapWorkers.applyBatch(size);
+    }
+    
+    /**
+     * Applies a range of the swap proposals in the batch buffers. Proposals of one batch touch
+     * pairwise disjoint actors, so disjoint ranges can be applied by different threads.
+     * @param from index of the first proposal
+     * @param to index behind the last proposal
+     * @return number of proposals that changed the graph
+     */
+    abstract int applyProposals(int from, int to);
+    
+    /**
+     * Copies all settings and the size of the network to another graph object.
+     * Used when creating copies of this graph for independent chains.
+     * @param copy graph object the settings are copied to
+     */
+    protected void copySettingsTo(Graph copy) {
+        copy.actorCount = actorCount;
+        copy.eventCount = eventCount;
+        copy.edgeCount = edgeCount;
+        copy.actorMap = actorMap;
+        copy.samples = samples;
+        copy.steps = steps;
+        copy.threads = threads;
+        copy.randomSeed = randomSeed;
+        copy.side = side;
+        copy.name = name;
+        copy.settings = settings;
+    }
+    
+    /**
+     * Creates a copy of this graph that can be used as an independent markov chain.
+     * The adjacency lists of the copy are private to it, while data that does not change
+     * during sampling (degrees, offsets, edge maps) is shared with this graph.
+     * The random number generator of the copy has to be initialized separately.
+     * @return copy of this graph
+     */
+    public abstract Graph createChainCopy();
+    
+    /**
+     * Copies the current adjacency lists of this graph to another graph of the same
+     * type and size, e.g. to publish a sample generated on a chain copy.
+     * @param target graph the adjacency lists are copied to
+     */
+    public abstract void copyAdjacencyTo(Graph target);
+    
+    /**
+     * Hands the current sample to another graph of the same type and size without copying it, e.g. to
+     * publish a sample generated on a chain copy while the workthreads wait at the barrier.
+     * Both graphs exchange their adjacency lists and the data derived from them, so the chain gets the
+     * buffers of the previous sample back. It copies the lists of the actors the sample changed into
+     * them in its own thread, before it generates the next sample.
+     * @param target graph the sample is handed to
+     */
+    public void publishSampleTo(Graph target) {
+        copySampleStateTo(target);
+        exchangeBuffers(target);
+        published = target;
+    }
+    
+    /**
+     * Exchanges the adjacency lists and the data derived from them with another graph of the same
+     * type and size that holds the previous sample of this chain
+     * @param target graph the current sample is handed to
+     */
+    protected abstract void exchangeBuffers(Graph target);
+    
+    /**
+     * Brings the buffers this chain got back from publishSampleTo up to date with the published sample
+     * @param source graph the sample was handed to, it is only read
+     */
+    protected abstract void catchUp(Graph source);
+    
+    /**
+     * Copies the weight of the current sample and the actors it changed to another graph
+     * the sample is copied to. A graph that never sampled, e.g. a chain state loaded for a warm
+     * start, has no change marks, so all actors of the target are marked as changed.
+     * @param target graph the sample is copied to
+     */
+    protected void copySampleStateTo(Graph target) {
+        target.logWeight = logWeight;
+        if (target.changed == null) target.changed = new boolean[actorCount];
+        if (changed != null) System.arraycopy(changed, 0, target.changed, 0, actorCount);
+        else Arrays.fill(target.changed, true);
+    }
+    
+    /**
+     * Marks two actors whose adjacency was changed by a step of the sampler
+     */
+    protected final void markChanged(int ac1, int ac2) {
+        changed[ac1] = true;
+        changed[ac2] = true;
     }
     
     /**
      * This method is called aech time a new sample needs to be generated.
+     * Performs the set number of steps and updates the mixing diagnostics.
+     * The first sample is generated after the burn-in, or after the set number of steps
+     * from the warm start graph.
+     */
+    public void createNextSample() {
+        if (published != null) {                    // the buffers got back with the last sample are one sample behind
+            catchUp(published);
+            published = null;
+        }
+        Arrays.fill(changed, false);                // track the actors changed by this sample
+        int count = steps;
+        if (!started) {                             // first sample
+            started = true;
+            // the projection has computed the initial coocs by now, unless the chain runs ahead (see trackCoocs)
+            if (settings.getIncrementalCooc() && projection != null) initCoocTable();
+            if (settings.getWarmStart() != null) {  // resume from the randomized graph
+                settings.getWarmStart().copyAdjacencyTo(this);
+                adjacencyChanged();
+            } else {
+                count = settings.getBurnin();       // or walk away from the observed graph
+            }
+        }
+        int accepted = performSteps(count);
+        sampleCompleted();
+        if (mixing != null) mixing.update(accepted, count);
+    }
+    
+    /**
+     * Updates the data derived from the adjacency lists once the steps of a sample are performed,
+     * before the mixing diagnostics or the projection read the sample
+     */
+    protected void sampleCompleted() {
+    }
+    
+    /**
+     * Performs a number of steps of the markov chain used for sampling.
      * It should implement the sampling process for this graph.
+     * @param count number of steps to perform
+     * @return number of steps that changed the graph
+     */
+    protected abstract int performSteps(int count);
+    
+    /**
+     * Creates the hash sets of all actors from their adjacency lists (only for hashed adjacency)
+     */
+    protected abstract void buildEventSets();
+    
+    /**
+     * Creates the table of the coocs of all pairs tracked by the projection, which is updated by
+     * the sampler (only for incremental coocs). Only simplex graphs support this.
+     */
+    protected void initCoocTable() {
+    }
+    
+    /**
+     * Starts updating the coocs of the pairs tracked by the projection after the chain has already
+     * left the observed graph, e.g. on a chain that generated a sample while the initial coocs were computed
+     */
+    public void trackCoocs() {
+        initCoocTable();
+        adjacencyChanged();
+    }
+    
+    /**
+     * Rebuilds the data the sampler derives from the adjacency lists after these were replaced,
+     * e.g. by a warm start, and marks all actors as changed
+     */
+    protected void adjacencyChanged() {
+        if (settings.getHashedAdjacency()) buildEventSets();
+        Arrays.fill(changed, true);
+    }
+    
+    /**
+     * @param a actor ID
+     * @return number of edges of the actor
+     */
+    protected abstract int actorDegree(int a);
+    
+    /**
+     * Computes the co-occurrence of two actors that is tracked by the mixing diagnostics
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return co-occurrence of both actors
+     */
+    protected abstract int probeCooc(int ac1, int ac2);
+    
+    /**
+     * Encodes all edges of the current graph as keys, e.g. to compare later samples to it
+     * @return one key per edge in ascending order
+     */
+    protected abstract long[] edgeKeys();
+    
+    /**
+     * Counts the edges present in this graph and in a graph previously encoded by edgeKeys
+     * @param keys edge keys of the other graph
+     * @return number of common edges
      */
-    public abstract void createNextSample();
+    protected abstract int sharedEdges(long[] keys);
 }
@@ -0,0 +1,145 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+/**
+ * Kernels counting the common elements of two sorted adjacency lists, which is the innermost
+ * loop of every projection. The kernel is picked per pair: if one list is much longer than the
+ * other, each element of the short list is searched in the long one by galloping (exponential
+ * search), otherwise both lists are merged without data-dependent branches. All kernels count
+ * exactly the same as the plain merge, also for repeated elements. Actors with many events may
+ * also keep them as bitsets over the event IDs, which are intersected by bit operations.
+ */
+public class Intersection {
+    private static final int gallopRatio = 8;   // minimum length ratio of the lists for galloping
+
+    /**
+     * Counts the common elements of two lists
+     * Input arrays are REQUIRED to be sorted in ascending order
+     *
+     * @param adj1 sorted integer array
+     * @param adj2 sorted integer array
+     * @return number of common elements
+     */
+    public static int count(int[] adj1, int[] adj2) {
+        if (adj1.length > adj2.length) {            // let adj1 be the shorter list
+            int[] tmp = adj1;
+            adj1 = adj2;
+            adj2 = tmp;
+        }
+        if (adj1.length == 0) return 0;
+        if (adj2.length / adj1.length >= gallopRatio) return gallop(adj1, adj2);
+        return merge(adj1, adj2);
+    }
+
+    /**
+     * Merges both lists. Instead of branching on the comparison of the current elements, both
+     * positions advance by the result of the comparison, so the loop does not suffer from branch
+     * mispredictions on random lists.
+     */
+    static int merge(int[] adj1, int[] adj2) {
+        int cooc = 0;
+        int pos1 = 0;
+        int pos2 = 0;
+        while (pos1 < adj1.length && pos2 < adj2.length) {
+            int item1 = adj1[pos1];
+            int item2 = adj2[pos2];
+            cooc += (item1 == item2) ? 1 : 0;
+            pos1 += (item1 <= item2) ? 1 : 0;       // advance in the list with the smaller element,
+            pos2 += (item1 >= item2) ? 1 : 0;       // or in both lists if the elements are identical
+        }
+        return cooc;
+    }
+
+    /**
+     * Searches each element of the short list in the long list, starting at the position of the
+     * previous element and doubling the step until the element is passed. The search only covers
+     * the gap to the next element, so the cost grows with the logarithm of the gap.
+     * @param small shorter sorted list
+     * @param large longer sorted list
+     */
+    static int gallop(int[] small, int[] large) {
+        int cooc = 0;
+        int pos = 0;                                // first position in large that may still match
+        for (int i=0; i<small.length && pos<large.length; i++) {
+            int item = small[i];
+            if (large[pos] < item) {
+                int low = pos;                      // large[low] < item
+                int step = 1;
+                while (low + step < large.length && large[low + step] < item) {
+                    low += step;
+                    step <<= 1;
+                }
+                int high = Math.min(low + step, large.length);  // large[high] >= item or high is the end
+                while (high - low > 1) {            // find the first position with large[pos] >= item
+                    int mid = (low + high) >>> 1;
+                    if (large[mid] < item) low = mid;
+                    else high = mid;
+                }
+                pos = high;
+            }
+            if (pos < large.length && large[pos] == item) {
+                cooc++;
+                pos++;
+            }
+        }
+        return cooc;
+    }
+
+    /**
+     * Counts the common elements of two bitsets by the number of bits set in their AND
+     * @param bits1 bitset of the same length as bits2
+     * @param bits2 bitset
+     * @return number of common elements
+     */
+    public static int count(long[] bits1, long[] bits2) {
+        int cooc = 0;
+        for (int i=0; i<bits1.length; i++) cooc += Long.bitCount(bits1[i] & bits2[i]);
+        return cooc;
+    }
+
+    /**
+     * Counts the elements of a list that are set in a bitset
+     * @param bits bitset covering all elements of the list
+     * @param adj integer array without repeated elements
+     * @return number of common elements
+     */
+    public static int count(long[] bits, int[] adj) {
+        int cooc = 0;
+        for (int item : adj) cooc += (int)(bits[item >>> 6] >>> item) & 1;
+        return cooc;
+    }
+
+    /**
+     * Estimates the number of steps count() takes for two sorted lists, used to choose between
+     * intersecting pairs of lists and other ways to compute co-occurrences
+     * @param length1 length of the first list
+     * @param length2 length of the second list
+     * @return number of elements compared
+     */
+    public static int cost(int length1, int length2) {
+        int small = Math.min(length1, length2);
+        int large = Math.max(length1, length2);
+        if (small == 0) return 0;
+        if (large / small >= gallopRatio) {         // galloping and binary search over each gap
+            return 2 * small * (32 - Integer.numberOfLeadingZeros(large / small));
+        }
+        return length1 + length2;
+    }
+}
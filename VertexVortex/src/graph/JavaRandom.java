@@ -0,0 +1,54 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+import java.util.Random;
+
+/**
+ * Generator wrapping java.util.Random. Reproduces the results of earlier versions for a given seed.
+ */
+public class JavaRandom extends RandomStream {
+    private Random random;          // wrapped generator
+
+    /**
+     * @param seed random seed
+     */
+    public JavaRandom(long seed) {
+        random = new Random(seed);
+    }
+
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Returns a generator seeded with the next int of this one, as earlier versions did for independent chains
+     */
+    public RandomStream split() {
+        return new JavaRandom(random.nextInt());
+    }
+}
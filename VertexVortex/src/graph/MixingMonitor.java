@@ -0,0 +1,232 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+/**
+ * Tracks the mixing of a markov chain during sampling and adapts the number of steps per sample.
+ * After each window of samples the lag-1 autocorrelation of the coocs of a fixed set of probe
+ * pairs is estimated. If it exceeds the target the number of steps is doubled, if it is below
+ * half the target the number of steps is reduced by a quarter. Acceptance rate of the steps and
+ * the fraction of edges of the observed graph still in place are summarized for the output.
+ * The autocorrelation over all samples gives the number of independent samples the chain's
+ * samples are worth, which the standard errors for stopping at a target precision are based on.
+ */
+public class MixingMonitor {
+    private static final int PROBE_ACTORS = 12;     // probes are all pairs of the actors with the highest degrees
+    private static final int WINDOW = 20;           // number of samples between two adaptations
+    private static final int MAX_FACTOR = 64;       // the number of steps never exceeds the initial number by more than this
+    private final Graph g;                          // graph the chain runs on
+    private final long[] originalEdges;             // edges of the observed graph as sorted keys (see Graph.edgeKeys)
+    private final double target;                    // target autocorrelation
+    private final int initialSteps;                 // number of steps per sample before any adaptation
+    private final long maxSteps;                    // upper limit for the number of steps
+    private final int[] probe1;                     // actor IDs of the probe pairs
+    private final int[] probe2;
+    private final int[][] window;                   // window[t][p] = cooc of probe p in sample t of the current window,
+                                                    // window[0] contains the last sample of the previous window
+    private final long[] coocSum;                   // sum of the coocs of each probe over all samples
+    private final double[] squareSum;               // sum of the squared coocs of each probe over all samples
+    private final double[] lagSum;                  // sum of the products of the coocs of each probe in consecutive samples
+    private final int[] first;                      // cooc of each probe in the first sample
+    private int filled;                             // number of samples in the current window
+    private int sampleCount;                        // number of samples so far
+    private long accepted;                          // number of steps that changed the graph so far
+    private long proposed;                          // number of steps performed so far
+    private double overlap;                         // fraction of the original edges in the sample that completed the last window
+    private double lastAutocorrelation = Double.NaN;// autocorrelation of the probe coocs in the last window
+
+    /**
+     * Default constructor. Must be called before the first sample is generated.
+     * @param graph graph the chain runs on
+     * @param target target lag-1 autocorrelation of the probe coocs (0 means the steps are not adapted)
+     */
+    public MixingMonitor(Graph graph, double target) {
+        this.g = graph;
+        this.target = target;
+        this.initialSteps = g.steps;
+        this.maxSteps = Math.min((long)Math.max(g.steps, 1) * MAX_FACTOR, Integer.MAX_VALUE);
+        this.originalEdges = g.edgeKeys();
+
+        // select the actors with the highest degrees
+        int k = Math.min(PROBE_ACTORS, g.actorCount);
+        int[] top = new int[k];
+        boolean[] selected = new boolean[g.actorCount];
+        for (int i=0; i<k; i++) {
+            int best = -1;
+            for (int a=0; a<g.actorCount; a++) {
+                if (!selected[a] && (best < 0 || g.actorDegree(a) > g.actorDegree(best))) best = a;
+            }
+            selected[best] = true;
+            top[i] = best;
+        }
+        int pairs = k*(k-1)/2;
+        probe1 = new int[pairs];
+        probe2 = new int[pairs];
+        int p = 0;
+        for (int i=0; i<k; i++) {
+            for (int j=i+1; j<k; j++) {
+                probe1[p] = top[i];
+                probe2[p++] = top[j];
+            }
+        }
+        window = new int[WINDOW+1][pairs];
+        coocSum = new long[pairs];
+        squareSum = new double[pairs];
+        lagSum = new double[pairs];
+        first = new int[pairs];
+    }
+
+    /**
+     * Records the diagnostics of a new sample. Adapts the number of steps of the graph
+     * once a window is complete.
+     * @param acceptedSteps number of steps that changed the graph during this sample
+     * @param performedSteps number of steps performed for this sample
+     */
+    public void update(int acceptedSteps, int performedSteps) {
+        sampleCount++;
+        accepted += acceptedSteps;
+        proposed += performedSteps;
+        int[] previous = window[filled];
+        int[] row = window[++filled];
+        for (int p=0; p<row.length; p++) {
+            row[p] = g.probeCooc(probe1[p], probe2[p]);
+            coocSum[p] += row[p];
+            squareSum[p] += (double)row[p] * row[p];
+            if (sampleCount > 1) lagSum[p] += (double)row[p] * previous[p];
+            else first[p] = row[p];
+        }
+        if (filled < WINDOW) return;
+
+        double autocorrelation = autocorrelation();
+        lastAutocorrelation = autocorrelation;
+        overlap = (g.edgeCount > 0) ? (double)g.sharedEdges(originalEdges) / g.edgeCount : 0;
+
+        if (target > 0 && !Double.isNaN(autocorrelation)) {     // adapt the number of steps
+            if (autocorrelation > target) {
+                g.steps = (int)Math.min((long)g.steps * 2, maxSteps);
+            } else if (autocorrelation < target / 2) {
+                g.steps = Math.max(1, (int)((long)g.steps * 3 / 4));
+            }
+        }
+        System.arraycopy(window[WINDOW], 0, window[0], 0, row.length);     // keep the last sample for the next window
+        filled = 0;
+    }
+
+    /**
+     * Estimates the lag-1 autocorrelation of the probe coocs in the current window, pooled over
+     * all probes. Each probe is centered with its mean over all samples so far.
+     * @return autocorrelation, or NaN if none of the probe coocs changed
+     */
+    private double autocorrelation() {
+        int start = (sampleCount == WINDOW) ? 1 : 0;    // the first window has no previous sample
+        double numerator = 0;
+        double denominator = 0;
+        for (int p=0; p<probe1.length; p++) {
+            double mean = (double)coocSum[p] / sampleCount;
+            for (int t=start; t<=WINDOW; t++) {
+                double x = window[t][p] - mean;
+                denominator += x*x;
+                if (t > start) numerator += x * (window[t-1][p] - mean);
+            }
+        }
+        if (denominator == 0) return Double.NaN;
+        return numerator / denominator;
+    }
+
+    /**
+     * Estimates the lag-1 autocorrelation of the probe coocs over all samples so far, pooled over
+     * all probes like in autocorrelation()
+     * @return autocorrelation, or NaN if there are less than two samples or none of the probe coocs changed
+     */
+    public double overallAutocorrelation() {
+        if (sampleCount < 2) return Double.NaN;
+        double numerator = 0;
+        double denominator = 0;
+        for (int p=0; p<probe1.length; p++) {
+            double mean = (double)coocSum[p] / sampleCount;
+            int last = window[filled][p];
+            denominator += squareSum[p] - sampleCount*mean*mean;
+            numerator += lagSum[p] - mean*(2*coocSum[p] - first[p] - last) + (sampleCount-1)*mean*mean;
+        }
+        if (denominator <= 0) return Double.NaN;
+        return Math.min(numerator / denominator, 1);
+    }
+
+    /**
+     * Estimates the number of independent samples the samples so far are worth. Assuming the
+     * correlation decays geometrically, a sample is worth (1-r)/(1+r) of an independent one,
+     * with r the autocorrelation over all samples.
+     * @param samples number of samples taken
+     * @return effective number of samples, between 1 and samples
+     */
+    public double effectiveSamples(int samples) {
+        double r = overallAutocorrelation();
+        if (Double.isNaN(r) || r <= 0) return samples;
+        return Math.max(1, Math.min(samples, samples * (1-r) / (1+r)));
+    }
+
+    /**
+     * @return number of samples recorded so far
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return fraction of the steps so far that changed the graph
+     */
+    public double getAcceptance() {
+        return (proposed > 0) ? (double)accepted / proposed : 0;
+    }
+
+    /**
+     * @return fraction of the edges of the observed graph still in place at the end of the last window
+     */
+    public double getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * @return autocorrelation of the probe coocs in the last window, or NaN if there was none
+     */
+    public double getLastAutocorrelation() {
+        return lastAutocorrelation;
+    }
+
+    /**
+     * @return target autocorrelation
+     */
+    public double getTarget() {
+        return target;
+    }
+
+    /**
+     * @return number of steps per sample before any adaptation
+     */
+    public int getInitialSteps() {
+        return initialSteps;
+    }
+
+    /**
+     * @return current number of steps per sample
+     */
+    public int getSteps() {
+        return g.steps;
+    }
+}
@@ -0,0 +1,75 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+/**
+ * Random number generator used by the samplers. Generators are not synchronized, so each
+ * one must only be used by one thread at a time. Independent generators for parallel chains
+ * are derived deterministically from one seeded generator with split().
+ */
+public abstract class RandomStream {
+
+    /**
+     * Creates a generator of the given type
+     * @param type "xoroshiro" for xoroshiro128** or "java" for java.util.Random
+     * @param seed random seed
+     * @return seeded generator
+     */
+    public static RandomStream create(String type, long seed) {
+        if (type.equals("java")) return new JavaRandom(seed);
+        return new XoroshiroRandom(seed);
+    }
+
+    /**
+     * @return uniformly distributed random long value
+     */
+    public abstract long nextLong();
+
+    /**
+     * Returns a uniformly distributed random value between 0 (inclusive) and bound (exclusive).
+     * Uses the upper 32 bits of a long scaled by multiplication, rejecting values that would
+     * introduce a bias.
+     * @param bound upper bound, must be positive
+     * @return random value in [0, bound)
+     */
+    public int nextInt(int bound) {
+        long r = (nextLong() >>> 32) * bound;
+        if ((r & 0xFFFFFFFFL) < bound) {                        // only then the value might be biased
+            long threshold = (0x100000000L - bound) % bound;    // 2^32 mod bound
+            while ((r & 0xFFFFFFFFL) < threshold) {
+                r = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int)(r >>> 32);
+    }
+
+    /**
+     * @return uniformly distributed random value in [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a new generator whose sequence does not overlap with the remaining sequence
+     * of this one. Repeated calls on generators seeded identically return identical generators.
+     * @return new generator
+     */
+    public abstract RandomStream split();
+}
@@ -0,0 +1,107 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+/**
+ * Settings of the sampler, the null model and the stopping rules. They are set once before
+ * sampling begins and are shared by a graph and all copies of it that run a chain.
+ */
+public class SamplingSettings {
+    private String samplingMode = "shared";     // "shared": one chain for all threads, "independent": one chain per thread,
+                                                // "pipeline": one chain generating samples while all threads evaluate
+    private boolean hashedAdjacency;            // true: test for edges with hash sets during sampling and sort lists lazily
+    private boolean signedAdjacency;            // true: duplex edge swaps work on one sorted list of signed events per actor
+    private String sampler = "swap";            // markov chain used for sampling: "swap" (edge swaps), "curveball" (trades)
+                                                // or "parallel" (edge swaps applied in parallel batches), or "sis"
+                                                // (independent samples by sequential importance sampling, simplex only)
+    private String rng = "java";                // random number generator: "xoroshiro" (xoroshiro128**) or "java" (java.util.Random)
+    private double mixingTarget;                // target autocorrelation of probe coocs between samples (0 = fixed number of steps)
+    private int burnin;                         // number of steps before the first sample
+    private Graph warmStart;                    // randomized graph of an earlier run the chain resumes from instead of
+                                                // the observed graph without burn-in, or null
+    private boolean incrementalCooc;            // true: the sampler updates the coocs of the tracked pairs with every accepted
+                                                // step, false: the projection recomputes them for every sample
+    private boolean pooledNull;                 // true: the null distributions of all tracked pairs with the same degrees are
+                                                // pooled, false: each pair counts its own
+    private int exceedances;                    // number of exceedances after which a pair stops being sampled (0 = never)
+    private double alpha = 0.05;                // significance level a pair stops being sampled at once it is clearly decided
+    private double pvalueTarget;                // sampling stops once the standard error of all p-values up to 2*alpha is below
+                                                // this (0 = all samples are taken)
+    private double leverageTarget;              // sampling stops once the standard error of all leverages is below this (0 = all samples)
+    private int timeLimit;                      // wall-clock seconds the run may take (0 = no limit)
+    private long startTime;                     // time in milliseconds the run started, the time limit counts from here
+    private boolean actorModel;                 // true: only the actor degrees are fixed and samples are drawn directly,
+                                                // false: both degree sequences are fixed (FDSM)
+    private boolean hubBitsets;                 // true: actors with many events also keep them as bitsets (simplex only)
+    
+    // GET- and SET-Functions
+    public String getSamplingMode() { return samplingMode; }
+    public void setSamplingMode(String samplingMode) { this.samplingMode = samplingMode; }
+    
+    public boolean getHashedAdjacency() { return hashedAdjacency; }
+    public void setHashedAdjacency(boolean hashedAdjacency) { this.hashedAdjacency = hashedAdjacency; }
+    
+    public boolean getSignedAdjacency() { return signedAdjacency; }
+    public void setSignedAdjacency(boolean signedAdjacency) { this.signedAdjacency = signedAdjacency; }
+    
+    public String getSampler() { return sampler; }
+    public void setSampler(String sampler) { this.sampler = sampler; }
+    
+    public String getRng() { return rng; }
+    public void setRng(String rng) { this.rng = rng; }
+    
+    public double getMixingTarget() { return mixingTarget; }
+    public void setMixingTarget(double mixingTarget) { this.mixingTarget = mixingTarget; }
+    
+    public int getBurnin() { return burnin; }
+    public void setBurnin(int burnin) { this.burnin = burnin; }
+    
+    public Graph getWarmStart() { return warmStart; }
+    public void setWarmStart(Graph warmStart) { this.warmStart = warmStart; }
+    
+    public boolean getIncrementalCooc() { return incrementalCooc; }
+    public void setIncrementalCooc(boolean incrementalCooc) { this.incrementalCooc = incrementalCooc; }
+    
+    public boolean getPooledNull() { return pooledNull; }
+    public void setPooledNull(boolean pooledNull) { this.pooledNull = pooledNull; }
+    
+    public int getExceedances() { return exceedances; }
+    public void setExceedances(int exceedances) { this.exceedances = exceedances; }
+    
+    public double getAlpha() { return alpha; }
+    public void setAlpha(double alpha) { this.alpha = alpha; }
+    
+    public double getPvalueTarget() { return pvalueTarget; }
+    public void setPvalueTarget(double pvalueTarget) { this.pvalueTarget = pvalueTarget; }
+    
+    public double getLeverageTarget() { return leverageTarget; }
+    public void setLeverageTarget(double leverageTarget) { this.leverageTarget = leverageTarget; }
+    
+    public int getTimeLimit() { return timeLimit; }
+    public void setTimeLimit(int timeLimit) { this.timeLimit = timeLimit; }
+    
+    public long getStartTime() { return startTime; }
+    public void setStartTime(long startTime) { this.startTime = startTime; }
+    
+    public boolean getActorModel() { return actorModel; }
+    public void setActorModel(boolean actorModel) { this.actorModel = actorModel; }
+    
+    public boolean getHubBitsets() { return hubBitsets; }
+    public void setHubBitsets(boolean hubBitsets) { this.hubBitsets = hubBitsets; }
+}
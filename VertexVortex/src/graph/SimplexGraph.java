@@ -21,6 +21,9 @@ package graph;
 import java.util.Arrays;
 import java.util.HashSet;
 
+import projection.abstr.CoocIndex;
+import projection.abstr.SimplexProjection;
+
 /**
  * Class used to store all data related to one simplex network
  */
@@ -35,19 +38,739 @@ public class SimplexGraph extends Graph {
                                 // [0,0,1,1,1,2,3...] if degree[0] = 2, degree[1] = 3, degree[2] = 1, ...
     public int[] offset;        // contains number of edges of all previous actors:
                                 // offset[0] = 0, offset[1] = degree[0], offset[2] = degree[0] + degree[1], ...
+    private int[] tradePool;    // buffers used by curveball trades: events only one of the two actors has
+    private int[] tradeIndex1;  // and their positions in the adjacency lists of the first
+    private int[] tradeIndex2;  // and second actor
+    private int[] sisOrder;     // actors in the order they are connected by importance sampling (increasing degree)
+    private int[] eventDegrees; // eventDegrees[e] = number of actors connected to event e
+    private int[] capacity;     // capacity[e] = number of edges event e still needs during importance sampling
+    private int[] candidates;   // events an actor may be connected to, but does not have to be
+    private double[] logOdds;   // log odds of the candidates to be chosen
+    private double[] chosenProb;// probabilities of the candidates to be chosen, conditioned to the number drawn
+    private double[] countProb; // probabilities for the number of chosen candidates
+    private boolean[] chosen;   // candidates chosen for the current actor
+    private static final int exactChoices = 64;         // largest number of chosen candidates whose count is always
+                                                        // computed exactly, larger ones are approximated
+    private static final double approxVariance = 25;    // smallest variance of the count for the approximation
+    public CoocTable coocTable; // coocs of the pairs tracked by the projection (only for incremental coocs)
+    private int[] eventOfEdge;  // eventOfEdge[i] = event of edge i if the edges are ordered by event (only for the actor model)
+    private RandomStream[] blockRandom;         // random number generators of the blocks of actors (only for the actor model)
+    private static final int actorBlocks = 64;  // number of blocks the actors are drawn in, independent of the thread count
+    private ThreadLocal<boolean[]> taken;       // taken[e] is true if the actor a thread is drawing already has event e
+    private ThreadLocal<double[]> keys;         // random keys of the events for the last draws of an actor
+    public long[][] hubBits;    // hubBits[n] contains the events of actor n as a bitset if n is a hub, otherwise null
+                                // (only for hub bitsets)
+    private int[] hubs;         // IDs of all actors with bitsets
+    public CoocIndex eventIndex;// actors of each event in the current sample, updated with every sample
+                                // (only if the projection counts coocs by scanning events)
     
     /**
      * Implements a markov chain to sample a new graph with
      * identical degree sequences.
+     * @param count number of steps to perform
+     * @return number of steps that changed the graph
+     */
+    protected int performSteps(int count) {
+        if (settings.getActorModel()) return actorSample();
+        if (settings.getSampler().equals("curveball")) return curveballSteps(count);
+        if (settings.getSampler().equals("parallel")) return parallelSteps(count);
+        if (settings.getSampler().equals("sis")) return importanceSample();
+        if (settings.getHashedAdjacency()) return hashedSteps(count);
+        int accepted = 0;                           // number of swaps performed
+        for (int i=0; i<count; i++) {               // for the selected number of steps
+            int r1 = random.nextInt(edgeCount);     // get two random edges
+            int r2 = random.nextInt(edgeCount);
+            int ac1 = edgeMap[r1];                  // find the corresponding actor IDs
+            int ac2 = edgeMap[r2];
+            int item1 = adjList[ac1][r1-offset[ac1]];
+            int item2 = adjList[ac2][r2-offset[ac2]];
+            // swap edges if no multi-edges are created this way
+            if (binarySwap(adjList[ac1], r1-offset[ac1], adjList[ac2], r2-offset[ac2])) {
+                swapped(ac1, item1, ac2, item2);
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+    
+    /**
+     * Implements the same markov chain as performSteps, but uses the hash sets of all
+     * actors to check for existing edges. Swapped events simply replace each other in the
+     * adjacency lists, which are sorted once the sample is complete.
      */
-    public void createNextSample() {
-        for (int i=0; i<steps; i++) {               // for the selected number of steps
+    private int hashedSteps(int count) {
+        int accepted = 0;                           // number of swaps performed
+        for (int i=0; i<count; i++) {               // for the selected number of steps
             int r1 = random.nextInt(edgeCount);     // get two random edges
             int r2 = random.nextInt(edgeCount);
             int ac1 = edgeMap[r1];                  // find the corresponding actor IDs
             int ac2 = edgeMap[r2];
+            int item1 = adjList[ac1][r1-offset[ac1]];
+            int item2 = adjList[ac2][r2-offset[ac2]];
             // swap edges if no multi-edges are created this way
-            binarySwap(adjList[ac1], r1-offset[ac1], adjList[ac2], r2-offset[ac2]);
+            if (hashedSwap(ac1, r1-offset[ac1], ac2, r2-offset[ac2])) {
+                swapped(ac1, item1, ac2, item2);
+                accepted++;
+            }
+        }
+        sortChangedLists();
+        return accepted;
+    }
+    
+    /**
+     * Marks the actors of an accepted swap as changed and updates the coocs of the tracked pairs
+     * and the event index
+     * @param ac1 ID of the first actor
+     * @param item1 event the first actor gave to the second one
+     * @param ac2 ID of the second actor
+     * @param item2 event the second actor gave to the first one
+     */
+    private void swapped(int ac1, int item1, int ac2, int item2) {
+        markChanged(ac1, ac2);
+        moveEvent(item1, ac1, ac2);
+        moveEvent(item2, ac2, ac1);
+    }
+    
+    /**
+     * Updates the coocs of the tracked pairs and the event index for an event that changed hands
+     * @param e event ID
+     * @param from actor that gave the event away
+     * @param to actor that received the event
+     */
+    private void moveEvent(int e, int from, int to) {
+        if (coocTable != null) coocTable.moveEvent(e, from, to);
+        if (eventIndex != null) eventIndex.moveEvent(e, from, to);
+    }
+    
+    /**
+     * Checks for the existence of edges with the hash sets and swaps target nodes if new edges
+     * don't exist. The swapped events replace each other, so the lists may become unsorted.
+     * @param ac1 ID of the first actor
+     * @param index1 index of an item in the adjacency list of the first actor
+     * @param ac2 ID of the second actor
+     * @param index2 index of an item in the adjacency list of the second actor
+     * @return true if the edges were swapped
+     */
+    private boolean hashedSwap(int ac1, int index1, int ac2, int index2) {
+        int item1 = adjList[ac1][index1];
+        int item2 = adjList[ac2][index2];
+        if (eventSets[ac1].contains(item2) || eventSets[ac2].contains(item1)) return false;
+        adjList[ac1][index1] = item2;
+        adjList[ac2][index2] = item1;
+        eventSets[ac1].remove(item1);
+        eventSets[ac1].add(item2);
+        eventSets[ac2].remove(item2);
+        eventSets[ac2].add(item1);
+        unsorted[ac1] = true;
+        unsorted[ac2] = true;
+        return true;
+    }
+    
+    /**
+     * Implements the same markov chain as performSteps, but applies the swaps in batches.
+     * Proposals are drawn in order and added to the current batch if they do not touch an actor
+     * of another proposal in the batch. Conflicting proposals are deferred to the next batch.
+     * All proposals of a batch touch disjoint actors and are applied in parallel.
+     */
+    private int parallelSteps(int count) {
+        int accepted = 0;                               // number of swaps performed
+        int drawn = 0;                                  // number of proposals drawn so far
+        int deferredCount = 0;                          // number of proposals waiting for a later batch
+        while (drawn < count || deferredCount > 0) {
+            newBatch();
+            int size = 0;                               // number of proposals in this batch
+            int waiting = 0;                            // number of proposals deferred again
+            for (int k=0; k<deferredCount; k++) {       // deferred proposals go first, in the order they were drawn
+                int r1 = deferred1[k];
+                int r2 = deferred2[k];
+                if (claim(edgeMap[r1], edgeMap[r2])) {
+                    batch1[size] = r1;
+                    batch2[size++] = r2;
+                } else {
+                    deferred1[waiting] = r1;
+                    deferred2[waiting++] = r2;
+                }
+            }
+            deferredCount = waiting;
+            while (size + deferredCount < batchSize && drawn < count) {    // fill the batch with new proposals
+                int r1 = random.nextInt(edgeCount);     // get two random edges
+                int r2 = random.nextInt(edgeCount);
+                drawn++;
+                if (edgeMap[r1] == edgeMap[r2]) continue;   // swaps within one actor never change anything
+                if (claim(edgeMap[r1], edgeMap[r2])) {
+                    batch1[size] = r1;
+                    batch2[size++] = r2;
+                } else {
+                    deferred1[deferredCount] = r1;
+                    deferred2[deferredCount++] = r2;
+                }
+            }
+            accepted += applyBatch(size);
+        }
+        if (settings.getHashedAdjacency()) sortChangedLists();
+        return accepted;
+    }
+    
+    /**
+     * Applies a range of the swap proposals of the current batch
+     */
+    int applyProposals(int from, int to) {
+        if (settings.getActorModel()) return drawBlocks(from, to); // the batch consists of blocks of actors
+        int accepted = 0;
+        for (int k=from; k<to; k++) {
+            int ac1 = edgeMap[batch1[k]];
+            int ac2 = edgeMap[batch2[k]];
+            boolean swapped;
+            if (settings.getHashedAdjacency()) swapped = hashedSwap(ac1, batch1[k]-offset[ac1], ac2, batch2[k]-offset[ac2]);
+            else swapped = binarySwap(adjList[ac1], batch1[k]-offset[ac1], adjList[ac2], batch2[k]-offset[ac2]);
+            if (swapped) {
+                markChanged(ac1, ac2);
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+    
+    /**
+     * Restores the sorting of all adjacency lists changed by the hashed sampler for the projection
+     */
+    private void sortChangedLists() {
+        for (int a=0; a<actorCount; a++) {
+            if (unsorted[a]) {
+                Arrays.sort(adjList[a]);
+                unsorted[a] = false;
+            }
+        }
+    }
+    
+    /**
+     * Implements the curveball markov chain to sample a new graph with identical degree
+     * sequences. In each step two random actors trade a random subset of the events
+     * only one of them is connected to.
+     */
+    private int curveballSteps(int count) {
+        if (actorCount < 2) return 0;                   // nobody to trade with
+        int accepted = 0;                               // number of trades that exchanged events
+        for (int i=0; i<count; i++) {                   // for the selected number of trades
+            int ac1 = random.nextInt(actorCount);       // pick two distinct random actors
+            int ac2 = random.nextInt(actorCount-1);
+            if (ac2 >= ac1) ac2++;
+            if (curveballTrade(ac1, ac2)) {
+                markChanged(ac1, ac2);
+                accepted++;
+            }
+        }
+        if (settings.getHashedAdjacency()) sortChangedLists();
+        return accepted;
+    }
+    
+    /**
+     * Performs one curveball trade between two actors. The events only one of the actors is
+     * connected to are shuffled and redistributed, so both keep their degree.
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return true if there were events to trade
+     */
+    private boolean curveballTrade(int ac1, int ac2) {
+        int[] list1 = adjList[ac1];
+        int[] list2 = adjList[ac2];
+        int n1 = 0;                                     // number of events only ac1 is connected to
+        int n2 = 0;                                     // number of events only ac2 is connected to
+        if (settings.getHashedAdjacency()) {            // find the events that are not shared
+            for (int k=0; k<list1.length; k++) {
+                if (!eventSets[ac2].contains(list1[k])) tradeIndex1[n1++] = k;
+            }
+            for (int k=0; k<list2.length; k++) {
+                if (!eventSets[ac1].contains(list2[k])) tradeIndex2[n2++] = k;
+            }
+        } else {                                        // by merging both sorted lists
+            int pos1 = 0;
+            int pos2 = 0;
+            while (pos1 < list1.length && pos2 < list2.length) {
+                if (list1[pos1] < list2[pos2]) tradeIndex1[n1++] = pos1++;
+                else if (list1[pos1] > list2[pos2]) tradeIndex2[n2++] = pos2++;
+                else {
+                    pos1++;
+                    pos2++;
+                }
+            }
+            while (pos1 < list1.length) tradeIndex1[n1++] = pos1++;
+            while (pos2 < list2.length) tradeIndex2[n2++] = pos2++;
+        }
+        if (n1 == 0 || n2 == 0) return false;           // nothing can be traded
+        
+        // put all events that are not shared in a pool and draw the n1 events for ac1 from it
+        for (int k=0; k<n1; k++) tradePool[k] = list1[tradeIndex1[k]];
+        for (int k=0; k<n2; k++) tradePool[n1+k] = list2[tradeIndex2[k]];
+        int poolSize = n1 + n2;
+        for (int k=0; k<n1; k++) {                      // partial Fisher-Yates shuffle
+            int r = k + random.nextInt(poolSize - k);
+            int tmp = tradePool[k];
+            tradePool[k] = tradePool[r];
+            tradePool[r] = tmp;
+        }
+        
+        if (coocTable != null || eventIndex != null) {  // update the coocs for all events that changed hands
+            for (int k=n1; k<poolSize; k++) {           // events from ac1 that now belong to ac2
+                if (hasEvent(ac1, tradePool[k])) moveEvent(tradePool[k], ac1, ac2);
+            }
+            for (int k=0; k<n1; k++) {                  // events from ac2 that now belong to ac1
+                if (!hasEvent(ac1, tradePool[k])) moveEvent(tradePool[k], ac2, ac1);
+            }
+        }
+        if (settings.getHashedAdjacency()) {            // update the hash sets of both actors
+            for (int k=n1; k<poolSize; k++) {           // events from ac1 that now belong to ac2
+                if (eventSets[ac1].contains(tradePool[k])) {
+                    eventSets[ac1].remove(tradePool[k]);
+                    eventSets[ac2].add(tradePool[k]);
+                }
+            }
+            for (int k=0; k<n1; k++) {                  // events from ac2 that now belong to ac1
+                if (!eventSets[ac1].contains(tradePool[k])) {
+                    eventSets[ac2].remove(tradePool[k]);
+                    eventSets[ac1].add(tradePool[k]);
+                }
+            }
+        }
+        // write the new events to the positions of the traded ones
+        for (int k=0; k<n1; k++) list1[tradeIndex1[k]] = tradePool[k];
+        for (int k=0; k<n2; k++) list2[tradeIndex2[k]] = tradePool[n1+k];
+        if (settings.getHashedAdjacency()) {
+            unsorted[ac1] = true;
+            unsorted[ac2] = true;
+        } else {
+            Arrays.sort(list1);
+            Arrays.sort(list2);
+        }
+        return true;
+    }
+    
+    /**
+     * Checks if an actor is connected to an event. During a curveball trade, this refers to the
+     * state before the trade until the adjacency lists and hash sets are updated.
+     * @param a actor ID
+     * @param e event ID
+     * @return true if the actor is connected to the event
+     */
+    private boolean hasEvent(int a, int e) {
+        if (settings.getHashedAdjacency()) return eventSets[a].contains(e);
+        return Arrays.binarySearch(adjList[a], e) >= 0;
+    }
+    
+    /**
+     * Generates an independent sample by sequential importance sampling. The actors are connected to
+     * events one after another, ordered by increasing degree. Events that need an edge from every actor
+     * left are forced, the remaining edges are drawn from the other events with free capacity with
+     * odds c/(N-c) for capacity c and N actors left, conditioned on the degree of the actor (conditional
+     * Poisson sampling). The log of the inverse probability of the sample is stored as its importance
+     * weight. Attempts that get stuck are repeated, which only changes the weights by a constant factor,
+     * so weighted averages normalized by the sum of the weights stay consistent.
+     * @return 1 (one new sample)
+     */
+    private int importanceSample() {
+        while (!tryImportanceSample());                     // repeat until a valid graph is completed
+        Arrays.fill(changed, true);                         // the whole graph is new
+        return 1;
+    }
+    
+    /**
+     * Performs one attempt of sequential importance sampling
+     * @return true if a valid graph was completed, false if the attempt got stuck
+     */
+    private boolean tryImportanceSample() {
+        System.arraycopy(eventDegrees, 0, capacity, 0, capacity.length);
+        logWeight = 0;
+        for (int k=0; k<actorCount; k++) {
+            int a = sisOrder[k];
+            int left = actorCount - k;                      // actors left including this one
+            int[] list = adjList[a];
+            int forced = 0;                                 // number of events this actor must be connected to
+            int n = 0;                                      // number of candidates
+            for (int e=0; e<capacity.length; e++) {
+                int c = capacity[e];
+                if (c == 0) continue;
+                if (c > left) return false;                 // the event can no longer get all its edges
+                if (c == left) {                            // every actor left must take the event
+                    if (forced == list.length) return false;
+                    list[forced++] = e;
+                } else {
+                    candidates[n] = e;
+                    logOdds[n++] = Math.log(c) - Math.log(left - c);
+                }
+            }
+            int need = list.length - forced;                // number of candidates to choose
+            if (need > n) return false;
+            logWeight -= conditionalPoisson(n, need);       // the weight is the inverse probability of the choice
+            for (int i=0; i<n; i++) {
+                if (chosen[i]) list[forced++] = candidates[i];
+            }
+            Arrays.sort(list);
+            for (int e : list) capacity[e]--;
+        }
+        return true;
+    }
+    
+    /**
+     * Draws exactly k of the first n candidates, where candidate i is chosen independently with
+     * odds exp(logOdds[i]), conditioned on exactly k being chosen. The odds are shifted so the expected
+     * number of chosen candidates is close to k (this does not change the conditional distribution), then
+     * independent draws are repeated until exactly k are chosen. The choice is written to chosen.
+     * The probability that exactly k are chosen is computed exactly in O(n*k) steps for small k. For
+     * larger k it is approximated in O(n) steps by the normal density with Edgeworth corrections, whose
+     * relative error is around 1e-6 once the variance of the count reaches approxVariance.
+     * @param n number of candidates
+     * @param k number of candidates to choose
+     * @return log of the probability of the chosen set
+     */
+    private double conditionalPoisson(int n, int k) {
+        if (k == 0 || k == n) {                             // there is only one possible choice
+            Arrays.fill(chosen, 0, n, k == n);
+            return 0;
+        }
+        boolean flip = 2*k > n;                             // choosing the complement is equivalent and cheaper
+        if (flip) {
+            for (int i=0; i<n; i++) logOdds[i] = -logOdds[i];
+            k = n - k;
+        }
+        
+        // find the shift t with sum(sigmoid(logOdds+t)) = k by safeguarded newton steps. The shift only
+        // affects how often the draws are repeated, so a rough solution is sufficient
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i=0; i<n; i++) {
+            min = Math.min(min, logOdds[i]);
+            max = Math.max(max, logOdds[i]);
+        }
+        double target = Math.log((double)k / (n - k));      // every candidate has probability k/n at these log odds
+        double lo = target - max;                           // the expected number is at most k for this shift
+        double hi = target - min;                           // and at least k for this one
+        double t = (lo + hi) / 2;
+        for (int iter=0; iter<50; iter++) {
+            double sum = 0;                                 // expected number of chosen candidates
+            double slope = 0;                               // and its derivative
+            for (int i=0; i<n; i++) {
+                double p = 1 / (1 + Math.exp(-(logOdds[i] + t)));
+                sum += p;
+                slope += p * (1 - p);
+            }
+            if (Math.abs(sum - k) < 0.1) break;
+            if (sum < k) lo = t;
+            else hi = t;
+            t -= (sum - k) / slope;                         // newton step
+            if (!(t > lo && t < hi)) t = (lo + hi) / 2;     // or bisection if it leaves the bracket
+        }
+        
+        // probabilities of the candidates and cumulants of the number of chosen candidates
+        double mean = 0;
+        double variance = 0;
+        double cumulant3 = 0;
+        double cumulant4 = 0;
+        for (int i=0; i<n; i++) {
+            double p = 1 / (1 + Math.exp(-(logOdds[i] + t)));
+            double q = p * (1 - p);
+            chosenProb[i] = p;
+            mean += p;
+            variance += q;
+            cumulant3 += q * (1 - 2*p);
+            cumulant4 += q * (1 - 6*q);
+        }
+        double logCountProb;                                // log probability that exactly k are chosen
+        if (k <= exactChoices || variance < approxVariance) {
+            Arrays.fill(countProb, 0, k+1, 0);              // distribution of the number chosen (up to k)
+            countProb[0] = 1;
+            for (int i=0; i<n; i++) {
+                double p = chosenProb[i];
+                for (int j=Math.min(i+1, k); j>0; j--) {
+                    countProb[j] = countProb[j] * (1 - p) + countProb[j-1] * p;
+                }
+                countProb[0] *= 1 - p;
+            }
+            logCountProb = Math.log(countProb[k]);
+        } else {
+            double sd = Math.sqrt(variance);
+            double z = (k - mean) / sd;
+            double z2 = z * z;
+            double he3 = z * (z2 - 3);                      // hermite polynomials of the corrections
+            double he4 = z2 * (z2 - 6) + 3;
+            double he6 = z2 * (z2 * (z2 - 15) + 45) - 15;
+            double correction = 1 + cumulant3 / (6 * variance * sd) * he3 + cumulant4 / (24 * variance * variance) * he4
+                    + cumulant3 * cumulant3 / (72 * variance * variance * variance) * he6;
+            logCountProb = -z2 / 2 - Math.log(sd * Math.sqrt(2 * Math.PI)) + Math.log(correction);
+        }
+        
+        // draw independently until exactly k candidates are chosen
+        int count;
+        do {
+            count = 0;
+            for (int i=0; i<n; i++) {
+                chosen[i] = random.nextDouble() < chosenProb[i];
+                if (chosen[i]) count++;
+            }
+        } while (count != k);
+        
+        double logProb = -logCountProb;                     // probability of the set given its size
+        for (int i=0; i<n; i++) {
+            double y = logOdds[i] + t;                      // log(p) = -log(1+exp(-y)), log(1-p) = -log(1+exp(y))
+            logProb -= (chosen[i]) ? Math.log1p(Math.exp(-y)) : Math.log1p(Math.exp(y));
+            if (flip) chosen[i] = !chosen[i];
+        }
+        return logProb;
+    }
+    
+    /**
+     * Generates an independent sample of the null model that only fixes the actor degrees. Every actor
+     * draws as many distinct events as its degree, independent of all other actors, so the blocks of
+     * actors are drawn in parallel if multiple threads are used.
+     * @return 1 (one new sample)
+     */
+    private int actorSample() {
+        applyBatch(blockRandom.length);
+        Arrays.fill(changed, true);                         // the whole graph is new
+        return 1;
+    }
+    
+    /**
+     * Draws new events for a range of blocks of actors. Each block uses its own random number
+     * generator, so the samples do not depend on the number of threads.
+     * @param from index of the first block
+     * @param to index behind the last block
+     * @return number of blocks drawn
+     */
+    private int drawBlocks(int from, int to) {
+        for (int b=from; b<to; b++) {
+            int first = (int)(((long)actorCount * b) / blockRandom.length);
+            int last = (int)(((long)actorCount * (b+1)) / blockRandom.length);
+            for (int a=first; a<last; a++) drawEvents(a, blockRandom[b]);
+        }
+        return to - from;
+    }
+    
+    /**
+     * Replaces the events of an actor by distinct events drawn one after another with probability
+     * proportional to their degree in the observed graph (drawing a random edge selects its event),
+     * where events the actor already has are drawn again. If the actor has most of the popular
+     * events, this gets slow, so the remaining events are chosen by the largest random keys
+     * log(u)/degree, which is the same distribution (Efraimidis and Spirakis).
+     * @param a actor ID
+     * @param random random number generator of the block of the actor
+     */
+    private void drawEvents(int a, RandomStream random) {
+        int[] list = adjList[a];
+        boolean[] has = taken.get();
+        int n = 0;                                          // number of events drawn
+        int attempts = 2*list.length + 16;                  // draws before switching to keys
+        while (n < list.length && attempts-- > 0) {
+            int e = eventOfEdge[random.nextInt(edgeCount)];
+            if (!has[e]) {
+                has[e] = true;
+                list[n++] = e;
+            }
+        }
+        if (n < list.length) {
+            double[] key = keys.get();                      // keys of the events, followed by a sorted copy
+            int free = 0;                                   // number of events the actor does not have
+            for (int e=0; e<eventCount; e++) {
+                key[e] = (has[e]) ? Double.NEGATIVE_INFINITY : Math.log(1 - random.nextDouble()) / eventDegrees[e];
+                if (!has[e]) key[eventCount + free++] = key[e];
+            }
+            Arrays.sort(key, eventCount, eventCount + free);
+            double threshold = key[eventCount + free - (list.length - n)];    // smallest key that is chosen
+            for (int e=0; e<eventCount && n<list.length; e++) {
+                if (!has[e] && key[e] >= threshold) {
+                    has[e] = true;
+                    list[n++] = e;
+                }
+            }
+        }
+        for (int e : list) has[e] = false;                  // reset for the next actor
+        Arrays.sort(list);
+    }
+    
+    /**
+     * Builds the map from edges to events used by the actor model and the random number
+     * generators of the blocks of actors
+     */
+    private void initActorSampling() {
+        eventDegrees = new int[eventCount];
+        for (int a=0; a<actorCount; a++) {
+            for (int e : adjList[a]) eventDegrees[e]++;
+        }
+        eventOfEdge = new int[edgeCount];
+        int i = 0;
+        for (int e=0; e<eventCount; e++) {
+            for (int k=0; k<eventDegrees[e]; k++) eventOfEdge[i++] = e;
+        }
+        blockRandom = new RandomStream[Math.max(1, Math.min(actorBlocks, actorCount))];
+        for (int b=0; b<blockRandom.length; b++) blockRandom[b] = random.split();
+        taken = new ThreadLocal<boolean[]>() {
+            protected boolean[] initialValue() {
+                return new boolean[eventCount];
+            }
+        };
+        keys = new ThreadLocal<double[]>() {
+            protected double[] initialValue() {
+                return new double[2*eventCount];
+            }
+        };
+        startWorkers();
+    }
+    
+    /**
+     * Allocates the buffers used by importance sampling and orders the actors by increasing degree
+     */
+    private void initImportanceSampling() {
+        eventDegrees = new int[eventCount];
+        int maxDegree = 0;
+        for (int a=0; a<actorCount; a++) {
+            for (int e : adjList[a]) eventDegrees[e]++;
+            maxDegree = Math.max(maxDegree, degrees[a]);
+        }
+        int[] start = new int[maxDegree + 2];               // counting sort of the actors by degree
+        for (int a=0; a<actorCount; a++) start[degrees[a] + 1]++;
+        for (int d=1; d<start.length; d++) start[d] += start[d-1];
+        sisOrder = new int[actorCount];
+        for (int a=0; a<actorCount; a++) sisOrder[start[degrees[a]]++] = a;
+        capacity = new int[eventCount];
+        candidates = new int[eventCount];
+        logOdds = new double[eventCount];
+        chosenProb = new double[eventCount];
+        countProb = new double[eventCount + 1];
+        chosen = new boolean[eventCount];
+    }
+    
+    /**
+     * Initializes the random number generator, the hash sets of all actors for hashed adjacency
+     * and the buffers used by curveball trades, parallel swaps, importance sampling or the actor model
+     */
+    public void initBeforeSampling() {
+        super.initBeforeSampling();
+        if (settings.getHashedAdjacency()) {
+            buildEventSets();
+            unsorted = new boolean[actorCount];
+        }
+        if (settings.getSampler().equals("curveball")) {    // allocate buffers for trades
+            int maxDegree = 0;
+            for (int a=0; a<actorCount; a++) maxDegree = Math.max(maxDegree, degrees[a]);
+            tradePool = new int[2*maxDegree];
+            tradeIndex1 = new int[maxDegree];
+            tradeIndex2 = new int[maxDegree];
+        }
+        if (settings.getSampler().equals("parallel")) initParallelSwaps();
+        if (settings.getSampler().equals("sis")) initImportanceSampling();
+        if (settings.getActorModel()) initActorSampling();
+    }
+    
+    /**
+     * Creates bitsets over the event IDs for all hubs, i.e. actors whose adjacency list takes at
+     * least as much memory as a bitset. The sampler keeps working on the adjacency lists, and the
+     * bitsets of the hubs it changed are rebuilt once the sample is complete, before the
+     * projection evaluates it.
+     */
+    public void buildHubBits() {
+        int count = 0;
+        for (int a=0; a<actorCount; a++) {
+            if (32L*degrees[a] >= eventCount) count++;
+        }
+        hubs = new int[count];
+        hubBits = new long[actorCount][];
+        count = 0;
+        for (int a=0; a<actorCount; a++) {
+            if (32L*degrees[a] >= eventCount) {
+                hubs[count++] = a;
+                hubBits[a] = new long[(eventCount + 63) >>> 6];
+            }
+        }
+        refreshHubBits(null);
+    }
+    
+    /**
+     * Rebuilds the bitsets of the hubs from their adjacency lists
+     * @param changed changed[n] is true if the adjacency of actor n changed, or null to rebuild all
+     */
+    private void refreshHubBits(boolean[] changed) {
+        for (int a : hubs) {
+            if (changed != null && !changed[a]) continue;
+            long[] bits = hubBits[a];
+            Arrays.fill(bits, 0);
+            for (int e : adjList[a]) bits[e >>> 6] |= 1L << e;
+        }
+    }
+    
+    /**
+     * Computes the co-occurrence of 2 actors in the current graph. Pairs with a hub are counted on
+     * its bitset, all other pairs by intersecting their adjacency lists.
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return co-occurrence of both actors
+     */
+    public int cooc(int ac1, int ac2) {
+        if (hubBits != null) {
+            long[] bits1 = hubBits[ac1];
+            long[] bits2 = hubBits[ac2];
+            if (bits1 != null && bits2 != null) return Intersection.count(bits1, bits2);
+            if (bits1 != null) return Intersection.count(bits1, adjList[ac2]);
+            if (bits2 != null) return Intersection.count(bits2, adjList[ac1]);
+        }
+        return computeCooc(adjList[ac1], adjList[ac2]);
+    }
+    
+    /**
+     * Estimates the number of steps cooc() takes for 2 actors
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return number of elements compared
+     */
+    public int coocCost(int ac1, int ac2) {
+        if (hubBits != null) {
+            if (hubBits[ac1] != null && hubBits[ac2] != null) return hubBits[ac1].length;
+            if (hubBits[ac1] != null) return degrees[ac2];
+            if (hubBits[ac2] != null) return degrees[ac1];
+        }
+        return Intersection.cost(degrees[ac1], degrees[ac2]);
+    }
+    
+    /**
+     * Updates the bitsets of the hubs the sample changed, before the mixing diagnostics probe the
+     * coocs of the hubs. Samplers that do not move the events of their swaps in the event index
+     * one by one update the event lists of the changed actors instead.
+     */
+    protected void sampleCompleted() {
+        if (hubBits != null) refreshHubBits(changed);
+        if (eventIndex != null && !movesIndexed()) eventIndex.update(adjList, changed);
+    }
+    
+    /**
+     * @return true if the sampler updates the event index with every accepted swap (see moveEvent),
+     *         false for samplers that swap in parallel or draw whole graphs
+     */
+    private boolean movesIndexed() {
+        return !settings.getActorModel() && !settings.getSampler().equals("parallel") && !settings.getSampler().equals("sis");
+    }
+    
+    /**
+     * Creates the table of the coocs of all pairs tracked by the projection from the initial coocs
+     */
+    protected void initCoocTable() {
+        coocTable = new CoocTable(adjList, eventCount, ((SimplexProjection)projection).trackedPairs());
+    }
+    
+    /**
+     * Rebuilds the hash sets, the table of tracked coocs and the event index after the adjacency
+     * lists were replaced
+     */
+    protected void adjacencyChanged() {
+        super.adjacencyChanged();
+        if (coocTable != null) coocTable.rebuild(adjList);
+        if (eventIndex != null && movesIndexed()) eventIndex.rebuild(adjList);
+    }
+    
+    /**
+     * Creates the hash sets of all actors from their adjacency lists
+     */
+    protected void buildEventSets() {
+        eventSets = new EventSet[actorCount];
+        for (int a=0; a<actorCount; a++) {
+            eventSets[a] = new EventSet(adjList[a]);
         }
     }
     
@@ -61,14 +784,15 @@ public class SimplexGraph extends Graph {
      * @param index1in1 index of an item in the array given by user1
      * @param actor2 Array containing all items connected to a second user
      * @param index2in2 index of an item in the array given by user2
+     * @return true if the edges were swapped
      */
-    private static void binarySwap(int[] actor1, int index1in1, int[] actor2, int index2in2) {
+    private static boolean binarySwap(int[] actor1, int index1in1, int[] actor2, int index2in2) {
         int item2 = actor2[index2in2];
         int index2in1 = Arrays.binarySearch(actor1, item2);
-        if (index2in1 >= 0) return;                         // if new edge already exists: do nothing
+        if (index2in1 >= 0) return false;                   // if new edge already exists: do nothing
         int item1 = actor1[index1in1];
         int index1in2 = Arrays.binarySearch(actor2, item1);
-        if (index1in2  >= 0) return;                        // if new edge already exists: do nothing
+        if (index1in2  >= 0) return false;                  // if new edge already exists: do nothing
 
         /* If we get to this point, both binary searches returned negative
          * index2in1 contains the InsertionPoint for item2 in user1
@@ -103,6 +827,122 @@ public class SimplexGraph extends Graph {
             }
         }
         actor1[index2in1] = item2;
+        return true;
+    }
+    
+    /**
+     * Creates a copy of this graph with private adjacency lists for an independent chain
+     */
+    public Graph createChainCopy() {
+        SimplexGraph copy = new SimplexGraph();
+        copySettingsTo(copy);
+        copy.adjList = new int[actorCount][];
+        for (int i=0; i<actorCount; i++) {
+            copy.adjList[i] = adjList[i].clone();   // adjacency lists are changed by the chain
+        }
+        copy.degrees = degrees;                     // everything else stays fixed during sampling
+        copy.edgeMap = edgeMap;
+        copy.offset = offset;
+        if (hubBits != null) copy.buildHubBits();
+        if (eventIndex != null) copy.eventIndex = new CoocIndex(copy.adjList, eventCount);
+        return copy;
+    }
+    
+    /**
+     * Copies the current adjacency lists to another simplex graph
+     */
+    public void copyAdjacencyTo(Graph target) {
+        int[][] targetList = ((SimplexGraph)target).adjList;
+        for (int i=0; i<actorCount; i++) {
+            System.arraycopy(adjList[i], 0, targetList[i], 0, degrees[i]);
+        }
+        copySampleStateTo(target);
+        SimplexGraph t = (SimplexGraph)target;
+        if (t.hubBits != null) t.refreshHubBits(t.changed);
+        if (t.eventIndex != null) t.eventIndex.update(t.adjList, t.changed);
+        if (coocTable != null) {                    // publish the tracked coocs along with the sample
+            if (t.coocTable == null) t.coocTable = coocTable.copy();
+            else coocTable.copyCoocsTo(t.coocTable);
+        }
+    }
+    
+    /**
+     * Exchanges the adjacency lists, hub bitsets, event index and tracked coocs with another simplex graph
+     */
+    protected void exchangeBuffers(Graph target) {
+        SimplexGraph t = (SimplexGraph)target;
+        int[][] lists = t.adjList;
+        t.adjList = adjList;
+        adjList = lists;
+        if (t.hubBits != null) {                    // both graphs have bitsets for the same hubs
+            long[][] bits = t.hubBits;
+            t.hubBits = hubBits;
+            hubBits = bits;
+        }
+        if (eventIndex != null) {
+            CoocIndex index = t.eventIndex;
+            t.eventIndex = eventIndex;
+            eventIndex = index;
+        } else if (t.eventIndex != null) {
+            /* the projection chose to scan after the chain was copied, so the chain creates its own
+             * index when it catches up. Until then the index of the target is updated in place */
+            t.eventIndex.update(t.adjList, t.changed);
+        }
+        if (coocTable != null) {
+            if (t.coocTable == null) t.coocTable = coocTable.copy();
+            else coocTable.exchangeCoocs(t.coocTable);
+        }
+    }
+    
+    /**
+     * Copies the lists of the changed actors and updates the derived data like the sampler does
+     */
+    protected void catchUp(Graph source) {
+        SimplexGraph s = (SimplexGraph)source;
+        boolean[] marks = s.changed;                // the marks handed over with the sample (see copySampleStateTo)
+        for (int a=0; a<actorCount; a++) {
+            if (marks[a]) System.arraycopy(s.adjList[a], 0, adjList[a], 0, degrees[a]);
+        }
+        if (hubBits != null) refreshHubBits(marks);
+        if (eventIndex != null) eventIndex.update(adjList, marks);
+        else if (s.eventIndex != null) eventIndex = new CoocIndex(adjList, eventCount);
+        if (coocTable != null) s.coocTable.copyCoocsTo(coocTable);
+    }
+    
+    protected int actorDegree(int a) {
+        return degrees[a];
+    }
+    
+    protected int probeCooc(int ac1, int ac2) {
+        return cooc(ac1, ac2);
+    }
+    
+    /**
+     * Encodes each edge as actor * eventCount + event
+     */
+    protected long[] edgeKeys() {
+        long[] keys = new long[edgeCount];
+        int k = 0;
+        for (int a=0; a<actorCount; a++) {
+            for (int e : adjList[a]) keys[k++] = (long)a * eventCount + e;
+        }
+        return keys;
+    }
+    
+    /**
+     * Counts the edges present in both graphs
+     */
+    protected int sharedEdges(long[] keys) {
+        int shared = 0;
+        int k = 0;
+        for (int a=0; a<actorCount; a++) {                      // merge the edges in the order of their keys
+            for (int e : adjList[a]) {
+                long key = (long)a * eventCount + e;
+                while (k < keys.length && keys[k] < key) k++;
+                if (k < keys.length && keys[k] == key) shared++;
+            }
+        }
+        return shared;
     }
     
     /**
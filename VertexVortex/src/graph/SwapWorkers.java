@@ -0,0 +1,95 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Pool of threads applying batches of edge swaps that touch pairwise disjoint actors.
+ * The thread requesting a batch takes part in the work, so a pool for n threads only
+ * starts n-1 additional threads. These are daemon threads and stay alive between batches.
+ */
+public class SwapWorkers {
+    private final Graph g;              // graph the swaps are applied to
+    private final int workers;          // number of threads working on each batch
+    private final CyclicBarrier start;  // releases the workers once a batch is ready
+    private final CyclicBarrier done;   // waits until all workers have finished the batch
+    private int batchSize;              // number of swaps in the current batch
+    private final int[] accepted;       // accepted[n] = number of swaps performed by thread n in the current batch
+
+    /**
+     * Creates the pool and starts its threads
+     * @param graph graph the swaps are applied to
+     * @param workers number of threads working on each batch, including the calling thread
+     */
+    public SwapWorkers(Graph graph, int workers) {
+        this.g = graph;
+        this.workers = workers;
+        this.start = new CyclicBarrier(workers);
+        this.done = new CyclicBarrier(workers);
+        this.accepted = new int[workers];
+        for (int i=1; i<workers; i++) {
+            final int workerID = i;
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            start.await();          // wait for the next batch
+                            applyShare(workerID);
+                            done.await();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            t.setDaemon(true);                      // do not keep the program alive once computation is done
+            t.start();
+        }
+    }
+
+    /**
+     * Applies a batch of swaps using all threads of the pool and returns once all are done.
+     * @param size number of swaps in the batch
+     * @return number of swaps that changed the graph
+     */
+    public int applyBatch(int size) {
+        batchSize = size;
+        try {
+            start.await();
+            applyShare(0);
+            done.await();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        int sum = 0;
+        for (int i=0; i<workers; i++) sum += accepted[i];
+        return sum;
+    }
+
+    /**
+     * Applies the contiguous part of the batch that belongs to one thread
+     * @param workerID ID of the thread in this pool
+     */
+    private void applyShare(int workerID) {
+        int from = (int)(((long)batchSize * workerID) / workers);
+        int to = (int)(((long)batchSize * (workerID+1)) / workers);
+        accepted[workerID] = g.applyProposals(from, to);
+    }
+}
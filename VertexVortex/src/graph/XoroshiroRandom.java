@@ -0,0 +1,93 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package graph;
+
+/**
+ * xoroshiro128** generator by Blackman and Vigna. Fast, not synchronized and with a period of
+ * 2^128 - 1, which can be divided into 2^64 non-overlapping streams of length 2^64 with jump().
+ */
+public class XoroshiroRandom extends RandomStream {
+    private static final long[] JUMP = { 0xdf900294d8f554a5L, 0x170865df4b3201fcL };  // polynomial for 2^64 steps
+    private long s0;                // state of the generator
+    private long s1;
+
+    /**
+     * Creates a generator with a state derived from the seed by SplitMix64
+     * @param seed random seed
+     */
+    public XoroshiroRandom(long seed) {
+        s0 = splitMix(seed += 0x9E3779B97F4A7C15L);
+        s1 = splitMix(seed += 0x9E3779B97F4A7C15L);
+        if (s0 == 0 && s1 == 0) s1 = 1;                     // the state must not be all zero
+    }
+
+    /**
+     * Creates a generator with the given state
+     */
+    private XoroshiroRandom(long s0, long s1) {
+        this.s0 = s0;
+        this.s1 = s1;
+    }
+
+    /**
+     * Mixing function of the SplitMix64 generator
+     */
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long nextLong() {
+        long result = Long.rotateLeft(s0 * 5, 7) * 9;
+        long t = s1 ^ s0;
+        s0 = Long.rotateLeft(s0, 24) ^ t ^ (t << 16);
+        s1 = Long.rotateLeft(t, 37);
+        return result;
+    }
+
+    /**
+     * Advances the generator by 2^64 steps
+     */
+    public void jump() {
+        long j0 = 0;
+        long j1 = 0;
+        for (long jump : JUMP) {
+            for (int b=0; b<64; b++) {
+                if ((jump & (1L << b)) != 0) {
+                    j0 ^= s0;
+                    j1 ^= s1;
+                }
+                nextLong();
+            }
+        }
+        s0 = j0;
+        s1 = j1;
+    }
+
+    /**
+     * Returns a generator continuing the sequence of this one, then jumps this one ahead by 2^64 steps.
+     * Streams split off one after another therefore never overlap unless one draws 2^64 values.
+     */
+    public RandomStream split() {
+        XoroshiroRandom stream = new XoroshiroRandom(s0, s1);
+        jump();
+        return stream;
+    }
+}
@@ -20,18 +20,22 @@ package main;
 
 import graph.DuplexGraph;
 import graph.Graph;
+import graph.SamplingSettings;
 import graph.SimplexGraph;
 
 import java.io.File;
 
 import projection.impl.AllDuplexProjection;
 import projection.impl.AllSimplexProjection;
+import projection.impl.AnalyticProjection;
+import projection.impl.BiCMProjection;
 import projection.impl.LeverageDuplexProjection;
 import projection.impl.LeverageSimplexProjection;
 import projection.impl.PNASProjection;
 import projection.impl.PvalueDuplexProjection;
 import projection.impl.PvalueSimplexProjection;
 
+import tool.ChainState;
 import tool.GraphReader;
 import tool.ProjectionWriter;
 import tool.Settings;
@@ -41,6 +45,7 @@ public class Main {
     public static String version = "VertexVortex v1.03 PNAS";
 
     public static void main(String[] args) {
+        long startTime = System.currentTimeMillis();    // the time limit counts from here
         
         System.out.println(version + ", Copyright (c) 2013, Andreas Spitz");
         System.out.println("This program comes with ABSOLUTELY NO WARRANTY. It is");
@@ -116,6 +121,10 @@ public class Main {
                     g.projection = new AllSimplexProjection((SimplexGraph)g);
                 } else if (set.getWeightType().equals("PNAS")){
                     g.projection = new PNASProjection((SimplexGraph)g);
+                } else if (set.getWeightType().equals("BiCM")){
+                    g.projection = new BiCMProjection((SimplexGraph)g);
+                } else if (set.getWeightType().equals("analytic")){
+                    g.projection = new AnalyticProjection((SimplexGraph)g);
                 } else {
                     System.out.println("Unknown weight type " + set.getWeightType() + ", terminating.");
                     System.exit(0);
@@ -130,6 +139,12 @@ public class Main {
                 } else if (set.getWeightType().equals("PNAS")){
                     System.out.println("PNAS weights are currently only supported for simplex projections.");
                     System.exit(0);
+                } else if (set.getWeightType().equals("BiCM")){
+                    System.out.println("BiCM weights are currently only supported for simplex projections.");
+                    System.exit(0);
+                } else if (set.getWeightType().equals("analytic")){
+                    System.out.println("Analytic weights are currently only supported for simplex projections.");
+                    System.exit(0);
                 } else {
                     System.out.println("Unknown weight type " + set.getWeightType() + ", terminating.");
                     System.exit(0);
@@ -141,6 +156,92 @@ public class Main {
             System.exit(0);
         }
         
+        SamplingSettings sampling = g.settings;                         // drop the settings this projection does not support
+        if (sampling.getActorModel() && !g.isSimplex) {
+            System.out.println("The actor degree null model is currently only supported for simplex projections.");
+            System.out.println("Using the FDSM instead.");
+            sampling.setActorModel(false);
+        }
+        if (sampling.getActorModel()) {                                 // samples are drawn directly, without a chain
+            if (!sampling.getSampler().equals("swap")) {
+                System.out.println("The actor degree null model draws independent samples directly. Ignoring the sampler.");
+                sampling.setSampler("swap");
+            }
+            sampling.setMixingTarget(0);                                // samples are independent, there is nothing to adapt
+        }
+        
+        if (sampling.getSampler().equals("sis")) {                     // importance weights are only known for simplex samples
+            if (!g.isSimplex || set.getWeightType().equals("PNAS")) {
+                System.out.println("Importance sampling is currently only supported for simplex projections with");
+                System.out.println("pvalue, lev or all weights. Terminating.");
+                System.exit(0);
+            }
+            sampling.setMixingTarget(0);                                // samples are independent, there is nothing to adapt
+        }
+        
+        if (sampling.getPooledNull() && (!g.isSimplex || sampling.getSampler().equals("sis")
+                || !(set.getWeightType().equals("pvalue") || set.getWeightType().equals("all")))) {
+            System.out.println("Pooled null distributions are currently only supported for simplex projections");
+            System.out.println("with pvalue or all weights and markov chain samplers. Counting per pair instead.");
+            sampling.setPooledNull(false);
+        }
+        
+        if (sampling.getExceedances() > 0 && (!g.isSimplex || sampling.getSampler().equals("sis") || sampling.getPooledNull()
+                || !set.getWeightType().equals("pvalue"))) {
+            System.out.println("Stopping pairs early is currently only supported for simplex projections with");
+            System.out.println("pvalue weights, markov chain samplers and per pair null distributions.");
+            System.out.println("Sampling all pairs until the end instead.");
+            sampling.setExceedances(0);
+        }
+        
+        if ((sampling.getPvalueTarget() > 0 || sampling.getLeverageTarget() > 0)
+                && (!g.isSimplex || sampling.getSampler().equals("sis") || sampling.getPooledNull()
+                || sampling.getExceedances() > 0 || sampling.getSamplingMode().equals("independent"))) {
+            System.out.println("Sampling until a target precision is currently only supported for simplex projections");
+            System.out.println("with shared or pipeline sampling, markov chain samplers and per pair null");
+            System.out.println("distributions that sample all pairs. Taking all samples instead.");
+            sampling.setPvalueTarget(0);
+            sampling.setLeverageTarget(0);
+        }
+        if (sampling.getPvalueTarget() > 0 && !(set.getWeightType().equals("pvalue") || set.getWeightType().equals("all"))) {
+            System.out.println("Target p-value precision requires pvalue or all weights. Ignoring it.");
+            sampling.setPvalueTarget(0);
+        }
+        if (sampling.getLeverageTarget() > 0 && !set.getWeightType().equals("all")) {
+            System.out.println("Target leverage precision requires all weights. Ignoring it.");
+            sampling.setLeverageTarget(0);
+        }
+        
+        sampling.setStartTime(startTime);
+        
+        if (sampling.getIncrementalCooc() && (!g.isSimplex || sampling.getSampler().equals("parallel")
+                || sampling.getSampler().equals("sis") || sampling.getActorModel())) {
+            System.out.println("Incremental coocs are currently only supported for simplex projections with");
+            System.out.println("swap or curveball samplers of the FDSM. Recomputing coocs instead.");
+            sampling.setIncrementalCooc(false);
+        }
+        
+        if (sampling.getHubBitsets()) {
+            if (g.isSimplex) {
+                ((SimplexGraph)g).buildHubBits();                       // before the initial coocs are computed
+            } else {
+                System.out.println("Bitsets for hubs are currently only supported for simplex projections. Ignoring them.");
+                sampling.setHubBitsets(false);
+            }
+        }
+        
+        if (set.getLoadChainFile() != null) {                          // resume the chain from a saved state
+            try {
+                System.out.println("Reading chain state from file.");
+                File chainFile = new File(set.getPathToRoot() + set.getLoadChainFile());    // relative path
+                if (!chainFile.exists()) chainFile = new File(set.getLoadChainFile());      // or absolute path
+                sampling.setWarmStart(ChainState.read(chainFile, g));
+            } catch (Exception e) {
+                System.out.println("Error occurred while reading chain state. " + e.getMessage());
+                System.exit(0);
+            }
+        }
+        
         Algorithm algo;
         try {
             System.out.println("Computing " + ((g.isSimplex) ? "simplex" : "duplex") + " projection.");
@@ -161,6 +262,19 @@ public class Main {
             e.printStackTrace();
             System.exit(0);
         }
+        
+        if (set.getSaveChainFile() != null) {                          // save the final state of the chain
+            try {
+                System.out.println("Writing chain state to file.");
+                File chainFile = new File(set.getSaveChainFile());
+                if (!chainFile.isAbsolute()) chainFile = new File(set.getPathToRoot() + set.getSaveChainFile());
+                ChainState.write(chainFile, g);
+            } catch (Exception e) {
+                System.out.println("Error occurred while writing chain state to file.");
+                e.printStackTrace();
+                System.exit(0);
+            }
+        }
    }
 
 }
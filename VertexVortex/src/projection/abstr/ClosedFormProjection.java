@@ -0,0 +1,52 @@
+package projection.abstr;
+
+import graph.Graph;
+import graph.SimplexGraph;
+
+/**
+ * Simplex projection that computes its weights from the original graph only, e.g. analytically
+ * from a null model, without sampling. All work is done per actor before sampling, so the hooks
+ * used during sampling have nothing to do: no pairs are tracked, and as there are no counters,
+ * an independent chain simply shares this projection.
+ */
+public abstract class ClosedFormProjection extends SimplexProjection {
+
+    public ClosedFormProjection(SimplexGraph graph) {
+        super(graph);
+    }
+
+    /**
+     * Closed-form weights are computed from the original graph only
+     */
+    public boolean needsSampling() {
+        return false;
+    }
+
+    /**
+     * Nothing is sampled for closed-form weights
+     */
+    public void doPerActorDuringSampling(int ac1) {
+    }
+
+    /**
+     * No pairs are tracked during sampling
+     * @return empty lists for all actors
+     */
+    public int[][] trackedPairs() {
+        return new int[g.actorCount][0];
+    }
+
+    /**
+     * There are no counters a chain could compute, so the chain shares this projection
+     */
+    public Projection createChainProjection(Graph chain) {
+        return this;
+    }
+
+    /**
+     * There are no counters to merge
+     */
+    public void mergeChainProjection(Projection chainProjection) {
+    }
+
+}
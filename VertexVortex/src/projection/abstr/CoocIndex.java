@@ -0,0 +1,208 @@
+package projection.abstr;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from events to actors used to compute the initial co-occurrences as the sparse
+ * product of the adjacency matrix with its transpose. For an actor, the counts of all other actors
+ * of its events are accumulated in a dense counter of the calling thread, so only pairs that
+ * actually co-occur are touched, instead of intersecting the lists of all pairs of actors.
+ * The adjacency lists must not contain repeated events.
+ * 
+ * During sampling, the graph may keep the index up to date with every sample, so projections can
+ * count the coocs of an actor with all its partners in one scan of its events instead of one
+ * intersection per partner. Samplers move the events of each accepted swap in the index, or
+ * update the lists of the events of all changed actors once the sample is complete.
+ */
+public class CoocIndex {
+    private int[][] members;            // members[e] contains all actors connected to event e in ascending order
+    private ThreadLocal<int[]> counts;  // cooc counts of the actor a thread is working on, zero between actors
+    private ThreadLocal<int[]> touched; // actors with a non-zero count
+    private long edgeCount;             // number of actors of all events
+    private int[] size;                 // buffer for the number of actors of each event, zero between rebuilds and updates
+    private int[] dirty;                // buffers for updates: events whose actors are rewritten,
+    private int[] split;                // the number of their actors that did not change,
+    private int[] tail;                 // and the changed actors of one event
+
+    /**
+     * Creates the index for the adjacency lists of the actors the co-occurring actors are taken from
+     * @param adjList adjacency lists of all actors
+     * @param eventCount number of events
+     */
+    public CoocIndex(int[][] adjList, int eventCount) {
+        final int actorCount = adjList.length;
+        size = new int[eventCount];
+        members = new int[eventCount][];
+        rebuild(adjList);
+        counts = new ThreadLocal<int[]>() {
+            protected int[] initialValue() {
+                return new int[actorCount];
+            }
+        };
+        touched = new ThreadLocal<int[]>() {
+            protected int[] initialValue() {
+                return new int[actorCount];
+            }
+        };
+    }
+
+    /**
+     * Computes the co-occurrences of an actor with all indexed actors from a given ID on
+     * @param adj events of the actor
+     * @param from smallest ID of the actors the co-occurrences are computed with
+     * @param skip ID of an actor that is left out, e.g. the actor itself, or -1
+     * @return sequence of pairs (actorID, co-occurrence) for all actors with a positive
+     *         co-occurrence in ascending order of their IDs
+     */
+    public int[] coocs(int[] adj, int from, int skip) {
+        int[] count = counts.get();
+        int[] partners = touched.get();
+        int n = 0;                                      // number of co-occurring actors
+        for (int e : adj) {
+            int[] m = members[e];
+            for (int k=m.length-1; k>=0 && m[k]>=from; k--) {   // all actors of the event with high enough ID
+                if (count[m[k]]++ == 0) partners[n++] = m[k];
+            }
+        }
+        Arrays.sort(partners, 0, n);
+        int[] pairs = new int[2*n];
+        int pos = 0;
+        for (int i=0; i<n; i++) {
+            int b = partners[i];
+            if (b != skip) {
+                pairs[pos++] = b;
+                pairs[pos++] = count[b];
+            }
+            count[b] = 0;                               // reset the counts for the next actor
+        }
+        return (pos == pairs.length) ? pairs : Arrays.copyOf(pairs, pos);
+    }
+
+    /**
+     * Refills the index from the adjacency lists of a new sample. The lists of events whose number
+     * of actors did not change are reused.
+     * @param adjList adjacency lists of all actors
+     */
+    public void rebuild(int[][] adjList) {
+        edgeCount = 0;
+        for (int[] list : adjList) {
+            for (int e : list) size[e]++;
+            edgeCount += list.length;
+        }
+        for (int e=0; e<members.length; e++) {
+            if (members[e] == null || members[e].length != size[e]) members[e] = new int[size[e]];
+            size[e] = 0;
+        }
+        for (int a=0; a<adjList.length; a++) {          // actors are added in ascending order
+            for (int e : adjList[a]) members[e][size[e]++] = a;
+        }
+        Arrays.fill(size, 0);
+    }
+
+    /**
+     * Moves an event from one actor to another, keeping the actors of the event in ascending order.
+     * Samplers call this for every accepted swap, so the index stays up to date without rebuilding.
+     * @param e event ID
+     * @param from actor that gave the event away
+     * @param to actor that received the event and was not connected to it before
+     */
+    public void moveEvent(int e, int from, int to) {
+        int[] m = members[e];
+        int i = Arrays.binarySearch(m, from);
+        if (to > from) {                                // shift the actors in between towards the gap
+            for (; i+1<m.length && m[i+1]<to; i++) m[i] = m[i+1];
+        } else {
+            for (; i>0 && m[i-1]>to; i--) m[i] = m[i-1];
+        }
+        m[i] = to;
+    }
+
+    /**
+     * Updates the index after a sample that moved events between the changed actors only, keeping
+     * the number of actors of every event, as the swaps of the samplers do. Only the lists of the
+     * events the changed actors hold now are rewritten, as any event that lost an actor has gained
+     * another one: the changed actors are removed and merged back in where they hold the event.
+     * If these lists make up a large part of the index, e.g. if all actors changed with a new graph,
+     * the index is rebuilt instead.
+     * @param adjList adjacency lists of all actors
+     * @param changed changed[n] is true if the adjacency of actor n changed since the last update
+     */
+    public void update(int[][] adjList, boolean[] changed) {
+        if (dirty == null) {
+            dirty = new int[members.length];
+            split = new int[members.length];
+            tail = new int[adjList.length];
+        }
+        int dirtyCount = 0;
+        long work = 0;                                  // number of actors in the lists that are rewritten
+        for (int a=0; a<adjList.length && 4*work<=edgeCount; a++) {
+            if (!changed[a]) continue;
+            for (int e : adjList[a]) {
+                if (size[e] == 0) {
+                    size[e] = -1;
+                    dirty[dirtyCount++] = e;
+                    work += members[e].length;
+                }
+            }
+        }
+        for (int i=0; i<dirtyCount; i++) size[dirty[i]] = 0;
+        if (4 * work > edgeCount) {                     // removing, appending and merging is slower per actor
+            rebuild(adjList);                           // than a rebuild, which visits all edges a few times
+            return;
+        }
+        for (int i=0; i<dirtyCount; i++) {              // remove the changed actors, the others stay in order
+            int[] m = members[dirty[i]];
+            int kept = 0;
+            for (int b : m) {
+                if (!changed[b]) m[kept++] = b;
+            }
+            split[i] = kept;
+            size[dirty[i]] = kept;
+        }
+        for (int a=0; a<adjList.length; a++) {          // append the changed actors in ascending order
+            if (!changed[a]) continue;
+            for (int e : adjList[a]) members[e][size[e]++] = a;
+        }
+        for (int i=0; i<dirtyCount; i++) {              // merge both sorted parts from the back
+            int[] m = members[dirty[i]];
+            size[dirty[i]] = 0;
+            int kept = split[i];
+            int added = m.length - kept;
+            if (kept == 0 || added == 0) continue;
+            System.arraycopy(m, kept, tail, 0, added);
+            int k = kept - 1;
+            int j = added - 1;
+            for (int w=m.length-1; j>=0; w--) {
+                m[w] = (k >= 0 && m[k] > tail[j]) ? m[k--] : tail[j--];
+            }
+        }
+    }
+
+    /**
+     * Counts the co-occurrences of an actor with all indexed actors from a given ID on in the
+     * counter of the calling thread. The counter has to be cleared with the same arguments before
+     * the thread counts for another actor.
+     * @param adj events of the actor
+     * @param from smallest ID of the actors the co-occurrences are counted with
+     * @return counter of the calling thread, count[b] = co-occurrence with actor b for all b >= from
+     */
+    public int[] count(int[] adj, int from) {
+        int[] count = counts.get();
+        for (int e : adj) {
+            int[] m = members[e];
+            for (int k=m.length-1; k>=0 && m[k]>=from; k--) count[m[k]]++;
+        }
+        return count;
+    }
+
+    /**
+     * Resets the counter of the calling thread after count() with the same arguments
+     */
+    public void clear(int[] adj, int from) {
+        int[] count = counts.get();
+        for (int e : adj) {
+            int[] m = members[e];
+            for (int k=m.length-1; k>=0 && m[k]>=from; k--) count[m[k]] = 0;
+        }
+    }
+}
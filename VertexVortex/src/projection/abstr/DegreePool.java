@@ -0,0 +1,151 @@
+package projection.abstr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Null distributions of the co-occurrence pooled over all tracked pairs of actors with the same
+ * pair of degrees. Under the fixed degree sequence model, actors of equal degree are exchangeable,
+ * so the co-occurrence of every pair with degrees (d1, d2) follows the same null distribution.
+ * Each sample therefore contributes one observation per tracked pair to the histogram of its
+ * degree pair, instead of one per pair counter. Threads count in private histograms, which are
+ * merged once sampling is complete.
+ */
+public class DegreePool {
+    private int[] classOf;          // classOf[n] = degree class of actor n
+    private int[][] partners;       // partners[c] contains the classes c2 >= c that are pooled with class c in ascending order
+    private int[][] slots;          // slots[c][i] = slot of the class pair (c, partners[c][i])
+    private int[] start;            // start[s] = position of the histogram of slot s in the counts, its length is start[s+1]-start[s]
+    private ArrayList<long[]> threadCounts; // histograms of all threads that counted
+    private ThreadLocal<long[]> counts;     // histograms of the calling thread, counts[start[s] + k] = number of cooc k in slot s
+    private double[] tail;          // tail[start[s] + k] = fraction of observations in slot s with cooc >= k (after finish)
+    private double[] mean;          // mean[s] = mean cooc of slot s (after finish)
+    private double[] squareMean;    // squareMean[s] = mean squared cooc of slot s (after finish)
+
+    /**
+     * Creates empty histograms for the degree pairs of all tracked pairs of actors
+     * @param degrees degrees[n] = degree of actor n
+     * @param result result structure of a projection consisting of triples (actorID, initial co-occurrence, counter)
+     */
+    public DegreePool(int[] degrees, int[][] result) {
+        int[] distinct = degrees.clone();                       // one class per distinct degree
+        Arrays.sort(distinct);
+        int classCount = 0;
+        for (int i=0; i<distinct.length; i++) {
+            if (i == 0 || distinct[i] != distinct[i-1]) distinct[classCount++] = distinct[i];
+        }
+        classOf = new int[degrees.length];
+        for (int n=0; n<degrees.length; n++) classOf[n] = Arrays.binarySearch(distinct, 0, classCount, degrees[n]);
+
+        boolean[][] pooled = new boolean[classCount][];         // mark the class pairs of all tracked pairs
+        for (int a=0; a<result.length; a++) {
+            for (int i=0; i<result[a].length; i+=3) {
+                int c1 = Math.min(classOf[a], classOf[result[a][i]]);
+                int c2 = Math.max(classOf[a], classOf[result[a][i]]);
+                if (pooled[c1] == null) pooled[c1] = new boolean[classCount];
+                pooled[c1][c2] = true;
+            }
+        }
+        partners = new int[classCount][];
+        slots = new int[classCount][];
+        ArrayList<Integer> lengths = new ArrayList<Integer>();
+        for (int c1=0; c1<classCount; c1++) {
+            int n = 0;
+            if (pooled[c1] != null) {
+                for (boolean p : pooled[c1]) if (p) n++;
+            }
+            partners[c1] = new int[n];
+            slots[c1] = new int[n];
+            n = 0;
+            for (int c2=c1; pooled[c1] != null && c2<classCount; c2++) {
+                if (!pooled[c1][c2]) continue;
+                partners[c1][n] = c2;
+                slots[c1][n++] = lengths.size();
+                lengths.add(Math.min(distinct[c1], distinct[c2]) + 1);  // no cooc exceeds the smaller degree
+            }
+        }
+        start = new int[lengths.size() + 1];
+        for (int s=0; s<lengths.size(); s++) start[s+1] = start[s] + lengths.get(s);
+
+        threadCounts = new ArrayList<long[]>();
+        counts = new ThreadLocal<long[]>() {
+            protected long[] initialValue() {
+                long[] c = new long[start[start.length-1]];
+                synchronized (threadCounts) {
+                    threadCounts.add(c);
+                }
+                return c;
+            }
+        };
+    }
+
+    /**
+     * @return slot of the degree pair of two actors
+     */
+    private int slot(int ac1, int ac2) {
+        int c1 = Math.min(classOf[ac1], classOf[ac2]);
+        int c2 = Math.max(classOf[ac1], classOf[ac2]);
+        return slots[c1][Arrays.binarySearch(partners[c1], c2)];
+    }
+
+    /**
+     * Adds the co-occurrence of a tracked pair of actors in the current sample to the histogram
+     * of the calling thread
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @param cooc co-occurrence of both actors
+     */
+    public void add(int ac1, int ac2, int cooc) {
+        counts.get()[start[slot(ac1, ac2)] + cooc]++;
+    }
+
+    /**
+     * Merges the histograms of all threads and computes the distributions. Called once after sampling.
+     */
+    public void finish() {
+        long[] total = new long[start[start.length-1]];
+        for (long[] c : threadCounts) {
+            for (int i=0; i<total.length; i++) total[i] += c[i];
+        }
+        tail = new double[total.length];
+        mean = new double[start.length-1];
+        squareMean = new double[start.length-1];
+        for (int s=0; s<mean.length; s++) {
+            long observations = 0;
+            double sum = 0;
+            double squareSum = 0;
+            for (int k=start[s+1]-1; k>=start[s]; k--) {        // sum up the histogram from the largest cooc
+                int cooc = k - start[s];
+                observations += total[k];
+                tail[k] = observations;
+                sum += (double)cooc * total[k];
+                squareSum += (double)cooc * cooc * total[k];
+            }
+            for (int k=start[s]; k<start[s+1]; k++) tail[k] = (observations == 0) ? 0 : tail[k] / observations;
+            mean[s] = (observations == 0) ? 0 : sum / observations;
+            squareMean[s] = (observations == 0) ? 0 : squareSum / observations;
+        }
+    }
+
+    /**
+     * @return fraction of pooled observations of the degree pair of two actors with a cooc of at least the given one
+     */
+    public double pvalue(int ac1, int ac2, int cooc) {
+        return tail[start[slot(ac1, ac2)] + cooc];
+    }
+
+    /**
+     * @return mean pooled cooc of the degree pair of two actors
+     */
+    public double mean(int ac1, int ac2) {
+        return mean[slot(ac1, ac2)];
+    }
+
+    /**
+     * @return mean squared pooled cooc of the degree pair of two actors
+     */
+    public double squareMean(int ac1, int ac2) {
+        return squareMean[slot(ac1, ac2)];
+    }
+
+}
@@ -1,15 +1,104 @@
 package projection.abstr;
 
 import graph.DuplexGraph;
+import graph.Intersection;
 
 /**
  * Projection for a duplex graph
  */
 public abstract class DuplexProjection extends Projection {
     protected DuplexGraph g;
+    protected CoocIndex posIndex;       // actors of each event by positive edges, used to compute the initial coocs
+    protected CoocIndex negIndex;       // actors of each event by negative edges
+    protected byte[] enginePos;         // enginePos[n] computes the ++ coocs of actor n during sampling: PAIRS, SCAN or MARK,
+    protected byte[] engineNeg;         // engineNeg and engineMix the -- and -+ coocs
+    protected byte[] engineMix;
+    protected EventMarker marker;       // marks the events of actors with the MARK engine
     
     public DuplexProjection(DuplexGraph graph) {
         this.g = graph;
     }
     
+    /**
+     * Allows actors to choose how their coocs are computed during sampling. Called once before the
+     * initial coocs.
+     */
+    protected void initEngines() {
+        enginePos = new byte[g.actorCount];
+        engineNeg = new byte[g.actorCount];
+        engineMix = new byte[g.actorCount];
+        marker = new EventMarker(g.eventCount);
+    }
+    
+    /**
+     * Chooses how the coocs of each type of an actor are computed during sampling by estimating
+     * the cost of each engine. Once an actor scans, the graph maintains the event indices of the
+     * initial coocs for every sample.
+     * @param a actor ID
+     * @param pos part of the result structure for the ++ coocs of the actor consisting of triples
+     *            (actorID, initial co-occurrence, counter)
+     * @param neg same for the -- coocs
+     * @param mix same for the -+ coocs
+     */
+    protected void chooseEngines(int a, int[] pos, int[] neg, int[] mix) {
+        enginePos[a] = cheapestEngine(g.degreesPos[a], pos, g.degreesPos);
+        engineNeg[a] = cheapestEngine(g.degreesNeg[a], neg, g.degreesNeg);
+        engineMix[a] = cheapestEngine(g.degreesNeg[a], mix, g.degreesPos);
+        if (enginePos[a] == SCAN || engineNeg[a] == SCAN || engineMix[a] == SCAN) {
+            g.posIndex = posIndex;
+            g.negIndex = negIndex;
+        }
+    }
+    
+    /**
+     * Estimates the cost of each engine for the coocs of one type of an actor
+     * @param degree length of the list of the actor
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     * @param degrees lengths of the lists of the partners
+     * @return PAIRS, SCAN or MARK, whichever is estimated to be cheapest
+     */
+    private static byte cheapestEngine(int degree, int[] result, int[] degrees) {
+        long pairCost = 0;
+        long partnerEvents = 0;
+        for (int pos=0; pos<result.length; pos+=3) {
+            pairCost += Intersection.cost(degree, degrees[result[pos]]);
+            partnerEvents += degrees[result[pos]];
+        }
+        return cheapestEngine(degree, result, pairCost, partnerEvents);
+    }
+    
+    /**
+     * Brings the cached co-occurrences of one type of all tracked pairs of an actor up to date with
+     * the current sample. If the actor changed and scans its events, the coocs with all partners are
+     * counted at once through the event index. Otherwise each pair is recomputed if one of its actors
+     * changed, either by intersecting both lists or by probing the events of the partner against
+     * the marked events of the actor.
+     * @param engine engine of the actor: PAIRS, SCAN or MARK
+     * @param index event index of the lists of the partners in the current sample
+     * @param ac1 ID of the actor
+     * @param adj1 sorted events of the actor
+     * @param adjList2 sorted events of all partners
+     * @param from smallest ID of the partners
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     * @param cache cached co-occurrences of the tracked pairs of the actor
+     */
+    protected void updateCache(byte engine, CoocIndex index, int ac1, int[] adj1, int[][] adjList2, int from,
+            int[] result, int[] cache) {
+        if (engine == SCAN && g.changed[ac1]) {
+            scanCoocs(index, adj1, from, result, cache);
+            return;
+        }
+        EventMarker.Marks marked = null;                // events of the actor, marked once a pair needs them
+        for (int i=0; i<cache.length; i++) {
+            int ac2 = result[3*i];
+            if (!g.changed[ac1] && !g.changed[ac2]) continue;
+            if (engine == MARK) {
+                if (marked == null) marked = marker.mark(adj1);
+                cache[i] = marked.count(adjList2[ac2]);
+            } else cache[i] = computeCooc(adj1, adjList2[ac2]);
+        }
+    }
+    
 }
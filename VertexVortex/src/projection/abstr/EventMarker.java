@@ -0,0 +1,67 @@
+package projection.abstr;
+
+import java.util.Arrays;
+
+/**
+ * Marks the events of one actor, so its co-occurrences with many partners can be counted by
+ * probing each event of a partner, without merging the list of the actor again for every partner.
+ * Each thread marks in its own array of stamps. Marking the next actor advances the stamp of the
+ * thread instead of clearing the array.
+ */
+public class EventMarker {
+    private ThreadLocal<Marks> marks;   // marks of the calling thread
+
+    /**
+     * Creates the marks for events with IDs below the given count
+     * @param eventCount number of events
+     */
+    public EventMarker(final int eventCount) {
+        marks = new ThreadLocal<Marks>() {
+            protected Marks initialValue() {
+                return new Marks(eventCount);
+            }
+        };
+    }
+
+    /**
+     * Marks the events of an actor, replacing the marks of the previous actor of the calling thread
+     * @param adj events of the actor
+     * @return marks of the calling thread, valid until it marks the next actor
+     */
+    public Marks mark(int[] adj) {
+        Marks m = marks.get();
+        m.mark(adj);
+        return m;
+    }
+
+    /**
+     * Events marked by one thread
+     */
+    public static class Marks {
+        private int[] stamps;   // stamps[e] = stamp of the last actor that marked event e
+        private int stamp;      // stamp of the actor marked last
+
+        private Marks(int eventCount) {
+            stamps = new int[eventCount];
+        }
+
+        private void mark(int[] adj) {
+            if (++stamp == 0) {                         // the stamps wrapped around, forget all old marks
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            for (int e : adj) stamps[e] = stamp;
+        }
+
+        /**
+         * Counts the events of a list that are marked, i.e. its co-occurrence with the marked actor
+         * @param adj integer array without repeated elements
+         * @return number of marked events
+         */
+        public int count(int[] adj) {
+            int cooc = 0;
+            for (int e : adj) cooc += (stamps[e] == stamp) ? 1 : 0;
+            return cooc;
+        }
+    }
+}
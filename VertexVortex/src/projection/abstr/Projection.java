@@ -1,5 +1,8 @@
 package projection.abstr;
 
+import graph.Graph;
+import graph.Intersection;
+
 /**
  * Abstract projection template.
  * Projections are assigned to a graph object before computation and serve two purposes:
@@ -12,6 +15,11 @@ package projection.abstr;
  * created and assigned to the graph.
  */
 public abstract class Projection {
+    private static final int scanSteps = 2;     // steps per partner and shared event of a scan (counting and clearing)
+    private static final int indexSteps = 1;    // steps per partner and shared event to keep the event index up to date
+    protected static final byte PAIRS = 0;      // engines computing the coocs of an actor during sampling: intersect every pair,
+    protected static final byte SCAN = 1;       // scan the events of the actor through the event index,
+    protected static final byte MARK = 2;       // or mark the events of the actor and probe the events of every partner
     public String weightType;
     
     /**
@@ -35,9 +43,66 @@ public abstract class Projection {
      * @param ac1 ID of the actor the computation is done for
      */
     public abstract void doPerActorDuringSampling(int ac1);
+    
+    /**
+     * Projections that compute their weights from the original graph only return false here.
+     * For these, only the computations before sampling are done and no samples are taken.
+     * @return true if the projection needs sampled graphs
+     */
+    public boolean needsSampling() {
+        return true;
+    }
+    
+    /**
+     * This method can implement any computation that needs to be done once after
+     * the sampling is complete and before the results are written.
+     */
+    public void doOnceAfterSampling() {
+    }
+    
+    /**
+     * Returns the largest standard error of all p-values that could be significant, i.e. that do not
+     * exceed twice alpha. It is used to stop sampling once a target precision is reached and is only
+     * called between samples. Projections without p-values return 0.
+     * @param samples number of samples evaluated so far
+     * @param effectiveSamples number of independent samples they are worth (see MixingMonitor.effectiveSamples)
+     * @param alpha significance level
+     * @return largest standard error of the p-values around alpha
+     */
+    public double pvalueError(int samples, double effectiveSamples, double alpha) {
+        return 0;
+    }
+    
+    /**
+     * Returns the largest standard error of all leverages, see pvalueError.
+     * Projections without cooc square sums return 0.
+     * @param samples number of samples evaluated so far
+     * @param effectiveSamples number of independent samples they are worth
+     * @return largest standard error of the leverages
+     */
+    public double leverageError(int samples, double effectiveSamples) {
+        return 0;
+    }
+    
+    /**
+     * This method must create a new projection of the same type for an independent
+     * chain. The new projection shares the initial co-occurrences with this one, but
+     * all counters computed during sampling are reset to zero. It is called after the
+     * initial co-occurrences have been computed.
+     * @param chain private copy of the graph the chain is running on
+     * @return projection used by the chain
+     */
+    public abstract Projection createChainProjection(Graph chain);
+    
+    /**
+     * This method must add all counters computed by the projection of an independent
+     * chain to the counters of this projection.
+     * @param chainProjection projection previously created by createChainProjection
+     */
+    public abstract void mergeChainProjection(Projection chainProjection);
    
     /**
-     * Computes the co-occurrence of 2 actors by comparing their adjacency lists
+     * Computes the co-occurrence of 2 actors by intersecting their adjacency lists (see Intersection)
      * Input arrays are REQUIRED to be sorted in ascending order
      * 
      * @param adj1 sorted integer array containing all events connected to actor1
@@ -45,19 +110,151 @@ public abstract class Projection {
      * @return co-occurrence of actor1 and actor2
      */
     protected static int computeCooc(int[] adj1, int[] adj2) {
-        int cooc = 0;
-        int pos1 = 0;
-        int pos2 = 0;
-        while ( (pos1 < adj1.length) && (pos2 < adj2.length) ) {  // while neither list is empty
-            if (adj1[pos1] < adj2[pos2]) pos1++;                  // if one list has a smaller element at the first
-            else if (adj1[pos1] > adj2[pos2]) pos2++;             // position: advance in that list
-            else {              // otherwise, both lists have an identical element
-                cooc++;         // so increase cooc
-                pos1++;         // and advance in both lists
-                pos2++;
+        return Intersection.count(adj1, adj2);
+    }
+    
+    /**
+     * Chooses the engine that computes the co-occurrences of an actor with all its tracked partners
+     * during sampling, by their cost in a sample that changed the actor: scanning the event index
+     * (see CoocIndex) costs 2*degree + 3*(sum of initial coocs), marking (see EventMarker) costs
+     * degree + partnerEvents, and intersecting costs pairCost.
+     * @param degree number of events of the actor
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     * @param pairCost estimated number of steps of all intersections (see Intersection.cost), on the
+     *                 bitsets of hubs where the graph keeps them (see SimplexGraph.coocCost)
+     * @param partnerEvents number of events of all partners
+     * @return PAIRS, SCAN or MARK, whichever is estimated to be cheapest
+     */
+    protected static byte cheapestEngine(int degree, int[] result, long pairCost, long partnerEvents) {
+        long scanCost = 2 * degree;                 // read the events, and move the actor in their lists
+        for (int pos=1; pos<result.length; pos+=3) scanCost += (scanSteps + indexSteps) * result[pos];
+        long markCost = degree + partnerEvents;     // mark the events once, then probe those of every partner
+        if (scanCost < Math.min(pairCost, markCost)) return SCAN;
+        return (markCost < pairCost) ? MARK : PAIRS;
+    }
+    
+    /**
+     * Counts the co-occurrences of an actor with all its tracked partners in one scan of its
+     * events through the event index of the current sample
+     * @param index event index of the lists of the partners
+     * @param adj events of the actor
+     * @param from smallest ID of the partners
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     * @param cache cached co-occurrences of the tracked pairs, overwritten with the current ones
+     */
+    protected static void scanCoocs(CoocIndex index, int[] adj, int from, int[] result, int[] cache) {
+        int[] count = index.count(adj, from);
+        for (int i=0; i<cache.length; i++) cache[i] = count[result[3*i]];
+        index.clear(adj, from);
+    }
+    
+    /**
+     * Creates the cache of co-occurrences of the tracked pairs of one actor from its part of a
+     * result structure consisting of triples (actorID, initial co-occurrence, counter)
+     * @param result part of the result structure for one actor
+     * @return initial co-occurrences of all tracked pairs
+     */
+    protected static int[] initialCache(int[] result) {
+        int[] cache = new int[result.length/3];
+        for (int i=0; i<cache.length; i++) {
+            cache[i] = result[3*i+1];
+        }
+        return cache;
+    }
+    
+    /**
+     * Copies the cached co-occurrences of all actors, e.g. for the projection of an independent chain
+     * @param cache cached co-occurrences
+     * @return deep copy of the cache
+     */
+    protected static int[][] copyCache(int[][] cache) {
+        int[][] copy = new int[cache.length][];
+        for (int a=0; a<cache.length; a++) {
+            copy[a] = cache[a].clone();
+        }
+        return copy;
+    }
+    
+    /**
+     * Copies a result structure consisting of triples (actorID, initial co-occurrence, counter)
+     * and sets all counters of the copy to zero.
+     * @param result result structure of a projection
+     * @return copy of the result structure with reset counters
+     */
+    protected static int[][] copyInitialCoocs(int[][] result) {
+        int[][] copy = new int[result.length][];
+        for (int a=0; a<result.length; a++) {
+            copy[a] = result[a].clone();                    // copy actor IDs and initial coocs
+            for (int pos=2; pos<copy[a].length; pos+=3) {   // and reset the counters
+                copy[a][pos] = 0;
+            }
+        }
+        return copy;
+    }
+    
+    /**
+     * Adds the counters of one result structure consisting of triples
+     * (actorID, initial co-occurrence, counter) to those of another one
+     * @param target result structure the counters are added to
+     * @param source result structure with identical actor IDs
+     */
+    protected static void addCounters(int[][] target, int[][] source) {
+        for (int a=0; a<target.length; a++) {
+            for (int pos=2; pos<target[a].length; pos+=3) {
+                target[a][pos] += source[a][pos];
+            }
+        }
+    }
+    
+    /**
+     * Computes the largest standard error of all p-values up to twice alpha from a result structure
+     * consisting of triples (actorID, initial co-occurrence, p-value count). The error is computed
+     * from (count+1)/(samples+2), so p-values without any count are not taken as exact, and from the
+     * effective number of samples, as consecutive samples of a chain are correlated.
+     * @param result result structure of a projection
+     * @param samples number of samples evaluated
+     * @param effectiveSamples number of independent samples they are worth
+     * @param alpha significance level
+     * @return largest standard error of the p-values around alpha
+     */
+    protected static double maxPvalueError(int[][] result, int samples, double effectiveSamples, double alpha) {
+        double max = 0;
+        for (int a=0; a<result.length; a++) {
+            for (int pos=2; pos<result[a].length; pos+=3) {
+                if (result[a][pos] > 2*alpha*samples) continue;     // clearly not significant
+                double p = (result[a][pos] + 1.0) / (samples + 2.0);
+                max = Math.max(max, Math.sqrt(p*(1-p)/effectiveSamples));
+            }
+        }
+        return max;
+    }
+    
+    /**
+     * Creates an empty structure for cooc sums with the same shape as the given one
+     * @param coocs structure for cooc sums
+     * @return structure of the same shape containing zeros
+     */
+    protected static long[][] copyShape(long[][] coocs) {
+        long[][] copy = new long[coocs.length][];
+        for (int a=0; a<coocs.length; a++) {
+            copy[a] = new long[coocs[a].length];
+        }
+        return copy;
+    }
+    
+    /**
+     * Adds all entries of one structure for cooc sums to another one
+     * @param target structure the sums are added to
+     * @param source structure of the same shape
+     */
+    protected static void addCounters(long[][] target, long[][] source) {
+        for (int a=0; a<target.length; a++) {
+            for (int pos=0; pos<target[a].length; pos++) {
+                target[a][pos] += source[a][pos];
             }
         }
-        return cooc;
     }
     
 }
@@ -2,14 +2,239 @@ package projection.abstr;
 
 import graph.SimplexGraph;
 
+import java.util.Arrays;
+
 /**
  * Projection for a simplex graph
+ * 
+ * Samples generated by importance sampling carry a weight. For these, projections accumulate
+ * weighted counters in addition to the integer counters, which are converted to counts for
+ * the number of samples taken once sampling is complete. The weights of one actor are stored
+ * relative to the largest weight seen by this actor, so they neither overflow nor underflow.
  */
 public abstract class SimplexProjection extends Projection {
     protected SimplexGraph g;
+    protected double[][] weighted;      // weighted[n] contains the weighted counters of actor n (only for weighted samples)
+    protected double[] weightSum;       // weightSum[n] is the sum of all sample weights seen by actor n
+    protected double[] weightSquareSum; // weightSquareSum[n] is the sum of all squared sample weights seen by actor n
+    protected double[] logScale;        // logScale[n] is the log of the sample weight that corresponds to 1 for actor n
+    public double effectiveSamples;     // effective sample size of weighted samples
+    public volatile DegreePool pool;    // null distributions pooled by degree pair (only for pooled null distributions)
+    protected CoocIndex index;          // actors of each event, used to compute the initial coocs
+    protected byte[] engine;            // engine[n] computes the coocs of actor n during sampling: PAIRS, SCAN or MARK
+                                        // (only if the projection recomputes the coocs of every sample)
+    protected EventMarker marker;       // marks the events of actors with the MARK engine
     
     public SimplexProjection(SimplexGraph graph) {
         this.g = graph;
     }
     
+    /**
+     * Returns the pairs of actors this projection tracks, used to keep their coocs up to date
+     * during sampling (only for incremental coocs)
+     * @return result structure consisting of triples (actorID, initial co-occurrence, counter)
+     */
+    public abstract int[][] trackedPairs();
+    
+    /**
+     * Returns the co-occurrence of a tracked pair of actors in the current sample. For incremental
+     * coocs it is taken from the table the sampler keeps up to date, otherwise it is recomputed
+     * if one of the actors changed.
+     * @param cache cached co-occurrences of the tracked pairs of the first actor
+     * @param i index of the pair
+     * @param ac1 ID of the first actor
+     * @param ac2 ID of the second actor
+     * @return co-occurrence of both actors
+     */
+    protected int sampleCooc(int[] cache, int i, int ac1, int ac2) {
+        if (g.coocTable != null) return g.coocTable.coocs[ac1][i];
+        if (g.changed[ac1] || g.changed[ac2]) cache[i] = g.cooc(ac1, ac2);
+        return cache[i];
+    }
+    
+    /**
+     * Returns the co-occurrences of all tracked pairs of an actor in the current sample. For
+     * incremental coocs they are taken from the table the sampler keeps up to date. Otherwise the
+     * cache is updated: if the actor changed and scans its events, the coocs with all partners are
+     * counted at once through the event index of the graph. Otherwise each pair is recomputed if
+     * one of its actors changed, either by intersecting both lists or by probing the events of the
+     * partner against the marked events of the actor.
+     * @param ac1 ID of the actor
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     * @param cache cached co-occurrences of the tracked pairs of the actor
+     * @return co-occurrences of the tracked pairs in the order of the result structure
+     */
+    protected int[] sampleCoocs(int ac1, int[] result, int[] cache) {
+        if (g.coocTable != null) return g.coocTable.coocs[ac1];
+        byte e = (engine == null) ? PAIRS : engine[ac1];
+        if (e == SCAN && g.changed[ac1]) {
+            scanCoocs(g.eventIndex, g.adjList[ac1], ac1+1, result, cache);
+            return cache;
+        }
+        EventMarker.Marks marked = null;                // events of the actor, marked once a pair needs them
+        for (int i=0; i<cache.length; i++) {
+            int ac2 = result[3*i];
+            if (!g.changed[ac1] && !g.changed[ac2]) continue;
+            if (e == MARK) {
+                if (marked == null) marked = marker.mark(g.adjList[ac1]);
+                cache[i] = marked.count(g.adjList[ac2]);
+            } else cache[i] = g.cooc(ac1, ac2);
+        }
+        return cache;
+    }
+    
+    /**
+     * Allows actors to choose how their coocs are computed during sampling. Called once before the
+     * initial coocs, only by projections that evaluate all tracked pairs of an actor with every
+     * sample. Incremental coocs and weighted samples always intersect pairs.
+     */
+    protected void initEngines() {
+        if (g.settings.getIncrementalCooc() || isWeighted()) return;
+        engine = new byte[g.actorCount];
+        marker = new EventMarker(g.eventCount);
+    }
+    
+    /**
+     * Chooses how the coocs of an actor are computed during sampling by estimating the cost of
+     * each engine. Once an actor scans, the graph maintains the event index of the initial coocs
+     * for every sample.
+     * @param a actor ID
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     */
+    protected void chooseEngine(int a, int[] result) {
+        if (engine == null) return;
+        long pairCost = 0;
+        long partnerEvents = 0;
+        for (int pos=0; pos<result.length; pos+=3) {
+            pairCost += g.coocCost(a, result[pos]);
+            partnerEvents += g.degrees[result[pos]];
+        }
+        engine[a] = cheapestEngine(g.degrees[a], result, pairCost, partnerEvents);
+        if (engine[a] == SCAN) g.eventIndex = index;
+    }
+    
+    /**
+     * Returns the pooled null distributions. They are created by the first call once the
+     * tracked pairs are known and shared with the projections of independent chains.
+     * @return pooled null distributions of the tracked pairs
+     */
+    protected DegreePool pool() {
+        if (pool == null) {
+            synchronized (this) {
+                if (pool == null) pool = new DegreePool(g.degrees, trackedPairs());
+            }
+        }
+        return pool;
+    }
+    
+    /**
+     * Adds the coocs of all tracked pairs of an actor in the current sample to the pooled
+     * null distributions instead of counting them per pair
+     * @param ac1 ID of the actor
+     * @param result part of the result structure for the actor consisting of triples
+     *               (actorID, initial co-occurrence, counter)
+     * @param cache cached co-occurrences of the tracked pairs of the actor
+     */
+    protected void poolDuringSampling(int ac1, int[] result, int[] cache) {
+        DegreePool p = pool();
+        int[] coocs = sampleCoocs(ac1, result, cache);
+        for (int i=0; i<cache.length; i++) {
+            p.add(ac1, result[3*i], coocs[i]);
+        }
+    }
+    
+    /**
+     * @return true if the samples of the graph carry importance weights
+     */
+    protected boolean isWeighted() {
+        return g.settings.getSampler().equals("sis");
+    }
+    
+    /**
+     * Reserves memory for the weighted counters of all actors
+     */
+    protected void initWeights() {
+        weighted = new double[g.actorCount][];
+        weightSum = new double[g.actorCount];
+        weightSquareSum = new double[g.actorCount];
+        logScale = new double[g.actorCount];
+        Arrays.fill(logScale, Double.NEGATIVE_INFINITY);
+    }
+    
+    /**
+     * Reserves empty weighted counters of the same shape as those of another projection,
+     * e.g. for the projection of an independent chain
+     * @param source projection with initialized weighted counters
+     */
+    protected void initWeights(SimplexProjection source) {
+        initWeights();
+        for (int a=0; a<weighted.length; a++) {
+            weighted[a] = new double[source.weighted[a].length];
+        }
+    }
+    
+    /**
+     * Returns the weight of the current sample for one actor and adds it to the weight sums.
+     * If the sample has a larger weight than all previous ones, the counters of the actor are
+     * rescaled first. Each actor is only evaluated by one thread at a time, so no synchronization
+     * is needed.
+     * @param a actor ID
+     * @return weight of the current sample relative to the scale of the actor
+     */
+    protected double sampleWeight(int a) {
+        double logWeight = g.logWeight;
+        if (logWeight > logScale[a]) {                      // rescale so the largest weight is 1
+            double factor = Math.exp(logScale[a] - logWeight);
+            double[] w = weighted[a];
+            for (int i=0; i<w.length; i++) w[i] *= factor;
+            weightSum[a] *= factor;
+            weightSquareSum[a] *= factor*factor;
+            logScale[a] = logWeight;
+        }
+        double weight = Math.exp(logWeight - logScale[a]);
+        weightSum[a] += weight;
+        weightSquareSum[a] += weight*weight;
+        return weight;
+    }
+    
+    /**
+     * Adds the weighted counters of another projection to this one, e.g. of an independent chain
+     * @param source projection with weighted counters of the same shape
+     */
+    protected void mergeWeights(SimplexProjection source) {
+        for (int a=0; a<weighted.length; a++) {
+            if (source.logScale[a] == Double.NEGATIVE_INFINITY) continue;  // no weights to merge
+            double scale = Math.max(logScale[a], source.logScale[a]);
+            double factor = Math.exp(logScale[a] - scale);              // bring both to the larger scale
+            double sourceFactor = Math.exp(source.logScale[a] - scale);
+            for (int i=0; i<weighted[a].length; i++) {
+                weighted[a][i] = weighted[a][i]*factor + source.weighted[a][i]*sourceFactor;
+            }
+            weightSum[a] = weightSum[a]*factor + source.weightSum[a]*sourceFactor;
+            weightSquareSum[a] = weightSquareSum[a]*factor*factor + source.weightSquareSum[a]*sourceFactor*sourceFactor;
+            logScale[a] = scale;
+        }
+    }
+    
+    /**
+     * Converts a weighted counter to the count it corresponds to for the number of samples taken
+     * @param a actor ID
+     * @param i index of the counter
+     * @return weighted average of the counter times the number of samples
+     */
+    protected double weightedCount(int a, int i) {
+        if (weightSum[a] == 0) return 0;
+        return g.samples * weighted[a][i] / weightSum[a];
+    }
+    
+    /**
+     * Computes the effective sample size of the weighted samples (identical for all actors)
+     */
+    protected void computeEffectiveSamples() {
+        effectiveSamples = (weightSquareSum.length == 0 || weightSquareSum[0] == 0) ? 0
+                : weightSum[0] * weightSum[0] / weightSquareSum[0];
+    }
+    
 }
@@ -1,9 +1,11 @@
 package projection.impl;
 
-import java.util.LinkedList;
 
+import projection.abstr.CoocIndex;
+import projection.abstr.Projection;
 import projection.abstr.SimplexProjection;
 
+import graph.Graph;
 import graph.SimplexGraph;
 
 /**
@@ -22,6 +24,8 @@ public class AllSimplexProjection extends SimplexProjection {
                                 // cooc sums are stored at positions 5i +2
                                 // cooc sum squares are stored at positions 5i +3
                                 // p-value counts are stored at positions 5i+4
+    public int[][] cache;       // cache[n] contains the co-occurrences of the pairs in result[n] in the current sample.
+                                // They are only recomputed if one of the actors was changed by the sampler
     
     public AllSimplexProjection(SimplexGraph graph) {
         super(graph);
@@ -33,35 +37,33 @@ public class AllSimplexProjection extends SimplexProjection {
      */
     public void doOnceBeforeSampling() {
         result = new int[g.actorCount][];    // make sure a list for the initial cooc exists
+        index = new CoocIndex(g.adjList, g.eventCount);  // inverted index for the initial coocs
+        cache = new int[g.actorCount][];
         coocs = new long[g.actorCount][];
+        if (isWeighted()) initWeights();
+        initEngines();
     }
     
     /**
      * Computes the initial co-occurrences of all actors in the original graph
      */
     public void doPerActorBeforeSampling(int a) {
-        LinkedList<Integer> tmpCoocs = new LinkedList<Integer>();   // create a list for new coocs as their number is not known
-        for (int b=a+1; b<g.actorCount; b++) {                      // for all actors B with ID higher than a
-            int cooc = computeCooc(g.adjList[a], g.adjList[b]);     // compute their co-occurence
-            if (cooc > 0) {                                         // if they do co-occur
-                tmpCoocs.add(b);                                    // add the ID of actor b to the list
-                tmpCoocs.add(cooc);                                 // and add the co-occurence
-            }
-        }
+        int[] pairs = index.coocs(g.adjList[a], a+1, -1);          // pairs (actorID, cooc) of all co-occurring actors with higher ID
         /* create an int array that has 5 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: counter for observed cooc
          * position i+3: counter for observed cooc squares
          * position i+4: p-value counts */
-        coocs[a] = new long[tmpCoocs.size()];
-        result[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        int pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            result[a][pos++] = tmpCoocs.remove();
-            result[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave three spaces for observed coocm cooc squares and p-value counts
+        if (!g.settings.getPooledNull()) coocs[a] = new long[pairs.length]; // pooled cooc sums are kept per degree pair
+        result[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            result[a][3*i] = pairs[2*i];
+            result[a][3*i+1] = pairs[2*i+1];
         }
+        cache[a] = initialCache(result[a]);             // the sampler starts from the original graph
+        chooseEngine(a, result[a]);
+        if (isWeighted()) weighted[a] = new double[result[a].length];  // weighted p-value count, cooc sum and square sum per cooc
     }
     
     /**
@@ -69,13 +71,23 @@ public class AllSimplexProjection extends SimplexProjection {
      * a co-occurrence in the initial graph and adds it to the coocs.
      */
     public void doPerActorDuringSampling(int ac1) {
+        if (isWeighted()) {
+            doWeightedDuringSampling(ac1);
+            return;
+        }
+        if (g.settings.getPooledNull()) {
+            poolDuringSampling(ac1, result[ac1], cache[ac1]);
+            return;
+        }
         int ac2;
         int resPos = 0;
         int coocPos = 0;
+        int pair = 0;
+        int[] sampled = sampleCoocs(ac1, result[ac1], cache[ac1]);  // coocs of all tracked pairs in this sample
         while (resPos < result[ac1].length) {      // go through the lists of initial coocs
             ac2 = (int)result[ac1][resPos++];     // get IDs of target actors
             // compute cooc for this pair of actors and add it to cooc count
-            int cooc = computeCooc(g.adjList[ac1], g.adjList[ac2]);
+            int cooc = sampled[pair++];
             long initCooc = result[ac1][resPos++];
             if (cooc >= initCooc) result[ac1][resPos]++;
             resPos++;
@@ -84,4 +96,92 @@ public class AllSimplexProjection extends SimplexProjection {
         }
     }
     
+    /**
+     * Same as doPerActorDuringSampling, but adds the weight of the sample to the weighted counters
+     * and sums. These are stored as triples (p-value count, cooc sum, cooc square sum).
+     */
+    private void doWeightedDuringSampling(int ac1) {
+        double weight = sampleWeight(ac1);
+        double[] w = weighted[ac1];
+        for (int i=0; i<w.length; i+=3) {
+            int ac2 = result[ac1][i];
+            int cooc = g.cooc(ac1, ac2);
+            if (cooc >= result[ac1][i+1]) w[i] += weight;
+            w[i+1] += weight * cooc;
+            w[i+2] += weight * cooc * cooc;
+        }
+    }
+    
+    /**
+     * Converts the weighted counters and sums of importance sampling to p-value counts and cooc sums,
+     * or computes the pooled null distributions
+     */
+    public void doOnceAfterSampling() {
+        if (g.settings.getPooledNull()) pool().finish();
+        if (!isWeighted()) return;
+        for (int a=0; a<g.actorCount; a++) {
+            for (int i=0; i<weighted[a].length; i+=3) {
+                result[a][i+2] = (int)Math.round(weightedCount(a, i));
+                coocs[a][2*i/3] = Math.round(weightedCount(a, i+1));
+                coocs[a][2*i/3+1] = Math.round(weightedCount(a, i+2));
+            }
+        }
+        computeEffectiveSamples();
+    }
+    
+    /**
+     * Returns the largest standard error of all p-values up to twice alpha
+     */
+    public double pvalueError(int samples, double effectiveSamples, double alpha) {
+        return maxPvalueError(result, samples, effectiveSamples, alpha);
+    }
+    
+    /**
+     * Returns the largest standard error of all leverages, computed from the variance of the sampled coocs
+     * and the effective number of samples
+     */
+    public double leverageError(int samples, double effectiveSamples) {
+        double max = 0;
+        for (int a=0; a<coocs.length; a++) {
+            for (int pos=0; pos<coocs[a].length; pos+=2) {
+                double mean = ((double)coocs[a][pos]) / samples;
+                double variance = ((double)coocs[a][pos+1]) / samples - mean*mean;
+                max = Math.max(max, Math.sqrt(Math.max(0, variance) / effectiveSamples));
+            }
+        }
+        return max;
+    }
+    
+    /**
+     * Returns the result structure, all pairs in it are tracked
+     */
+    public int[][] trackedPairs() {
+        return result;
+    }
+    
+    /**
+     * Creates a projection for an independent chain that shares the initial co-occurrences
+     */
+    public Projection createChainProjection(Graph chain) {
+        AllSimplexProjection proj = new AllSimplexProjection((SimplexGraph)chain);
+        proj.result = copyInitialCoocs(result);
+        proj.cache = copyCache(cache);
+        proj.engine = engine;                           // the chain uses the same engines for each actor
+        proj.marker = marker;                           // marks are kept per thread
+        if (g.settings.getPooledNull()) proj.pool = pool(); // all chains count in the same pooled distributions
+        else proj.coocs = copyShape(coocs);
+        if (isWeighted()) proj.initWeights(this);
+        return proj;
+    }
+    
+    /**
+     * Adds the p-value counts and cooc sums of an independent chain to this projection
+     */
+    public void mergeChainProjection(Projection chainProjection) {
+        AllSimplexProjection proj = (AllSimplexProjection)chainProjection;
+        addCounters(result, proj.result);
+        if (!g.settings.getPooledNull()) addCounters(coocs, proj.coocs);
+        if (isWeighted()) mergeWeights(proj);
+    }
+    
 }
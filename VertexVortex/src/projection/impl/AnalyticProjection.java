@@ -0,0 +1,65 @@
+package projection.impl;
+
+import projection.abstr.ClosedFormProjection;
+import projection.abstr.CoocIndex;
+import tool.Hypergeometric;
+
+import graph.SimplexGraph;
+
+/**
+ * Projection that only computes the closed-form weights of the original graph (hypergeometric
+ * similarity, Newman co-occurrence, Pearson correlation and cosine) without sampling.
+ * The co-occurrences are computed as the sparse product of the adjacency matrix with its transpose
+ * (see CoocIndex), like the initial co-occurrences of all projections. Only use with SIMPLEX graphs.
+ */
+public class AnalyticProjection extends ClosedFormProjection {
+    /* COMPUTED DATA
+     * (this will be generated by the algorithm and does not need to be initialized) */
+    public int[][] result;          // result[n] contains all co-occurrences for actor n with all actors m that have
+                                    // a higher ID (m > n). If cooc(n,m)=0 there is no entry.
+                                    // Format is a sequence of pairs: (actorID, co-occurrence)
+    public double[][] hypergeom;    // hypergeom[n][i] = hypergeometric similarity of the i-th pair in result[n]
+    public double newmanConst;      // constant factor of the expected newman cooc: (<deg^2>-<deg>)/<deg> of the events
+    private Hypergeometric hyp;     // computes hypergeometric similarities
+
+    public AnalyticProjection(SimplexGraph graph) {
+        super(graph);
+        this.weightType = "analytic";
+    }
+
+    /**
+     * Initializes the memory needed to store results and builds the index of actors per event
+     */
+    public void doOnceBeforeSampling() {
+        result = new int[g.actorCount][];
+        hypergeom = new double[g.actorCount][];
+        hyp = new Hypergeometric(g.randomSeed);
+        int[] eventDegs = new int[g.eventCount];
+        for (int[] alist : g.adjList) {
+            for (int e : alist) eventDegs[e]++;
+        }
+        index = new CoocIndex(g.adjList, g.eventCount);
+        // compute constant factor for expected newman cooc as (<deg^2>-<deg>)/<deg> for degrees on the event side
+        newmanConst = 0;
+        int deg = 0;
+        for (int d : eventDegs) {
+            newmanConst += Math.pow(d, 2);
+            deg += d;
+        }
+        newmanConst = (newmanConst - (double)deg) / (double)deg;
+    }
+
+    /**
+     * Computes the co-occurrences of an actor with all actors of higher ID from the events they share,
+     * and the hypergeometric similarity of each co-occurring pair
+     */
+    public void doPerActorBeforeSampling(int a) {
+        result[a] = index.coocs(g.adjList[a], a+1, -1);
+        hypergeom[a] = new double[result[a].length/2];
+        for (int i=0; i<hypergeom[a].length; i++) {
+            int b = result[a][2*i];
+            hypergeom[a][i] = hyp.getUpperTailSimilarity(g.degrees[a], g.degrees[b], result[a][2*i+1], g.eventCount);
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+package projection.impl;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.special.Erf;
+
+import projection.abstr.ClosedFormProjection;
+import projection.abstr.CoocIndex;
+
+import graph.SimplexGraph;
+
+/**
+ * Projection that computes weights analytically from the bipartite configuration model (BiCM)
+ * instead of sampling. The BiCM is the maximum entropy ensemble of bipartite graphs whose expected
+ * degrees match the observed ones. Actor n and event e are connected independently with probability
+ * x[n]y[e] / (1 + x[n]y[e]), so the co-occurrence of two actors is a sum of independent Bernoulli
+ * variables (Poisson-binomial distribution). Its expectation, variance and p-value follow directly.
+ * Actors and events of equal degree have equal parameters, so the model is fitted on degree classes.
+ * Only use with SIMPLEX graphs.
+ */
+public class BiCMProjection extends ClosedFormProjection {
+    private static final int maxIterations = 10000;     // maximum number of fixed-point iterations
+    private static final double tolerance = 1e-8;       // maximum deviation of expected from observed actor degrees
+    private static final int exactLimit = 200;          // largest cooc with exact p-values, larger ones are approximated
+
+    /* COMPUTED DATA
+     * (this will be generated by the algorithm and does not need to be initialized) */
+    public int[][] result;      // result[n] contains all co-occurrences for actor n with all actors m that have
+                                // a higher ID (m > n). If cooc(n,m)=0 there is no entry.
+                                // Format is a sequence of pairs: (actorID, co-occurrence)
+    public double[][] moments;  // moments[n] contains a triple (expected cooc, cooc variance, p-value)
+                                // for each pair in result[n]
+    public int[] actorClass;    // actorClass[n] = degree class of actor n
+    public int[] eventClassSize;// eventClassSize[d] = number of events in degree class d
+    public double[][] prob;     // prob[c][d] = probability of an edge between an actor of class c and an event of class d
+    public int iterations;      // number of fixed-point iterations used for the fit
+    public double degreeError;  // maximum deviation of expected from observed actor degrees after the fit
+
+    public BiCMProjection(SimplexGraph graph) {
+        super(graph);
+        this.weightType = "BiCM";
+    }
+
+    /**
+     * Initializes the memory needed to store results and fits the model to the degree sequences
+     */
+    public void doOnceBeforeSampling() {
+        result = new int[g.actorCount][];
+        moments = new double[g.actorCount][];
+        index = new CoocIndex(g.adjList, g.eventCount);             // inverted index for the initial coocs
+        fit();
+    }
+
+    /**
+     * Fits the parameters of all degree classes by alternating fixed-point iterations
+     * x[c] = k[c] / sum_d n[d]y[d]/(1+x[c]y[d]) and y[d] = h[d] / sum_c n[c]x[c]/(1+x[c]y[d]),
+     * where k and h are the degrees and n the sizes of the classes. After each y update the
+     * event degrees are matched exactly, so the iteration stops once the actor degrees match.
+     * Actors connected to all events and events connected to all actors have infinite parameters
+     * and edge probability 1. They are left out of the fit, which only matches the degrees that
+     * remain without the edges to them.
+     */
+    private void fit() {
+        int[] eventDegrees = new int[g.eventCount];
+        for (int[] list : g.adjList) {
+            for (int e : list) eventDegrees[e]++;
+        }
+        actorClass = new int[g.actorCount];
+        int[] eventClass = new int[g.eventCount];
+        int[] k = degreeClasses(g.degrees, actorClass);     // degrees of the actor classes
+        int[] h = degreeClasses(eventDegrees, eventClass);  // and of the event classes
+        int[] actorClassSize = new int[k.length];
+        for (int c : actorClass) actorClassSize[c]++;
+        eventClassSize = new int[h.length];
+        for (int d : eventClass) eventClassSize[d]++;
+
+        boolean[] fullActor = new boolean[k.length];        // classes connected to all nodes of the other side
+        boolean[] fullEvent = new boolean[h.length];
+        int fullActors = 0;
+        int fullEvents = 0;
+        for (int c=0; c<k.length; c++) {
+            fullActor[c] = (k[c] == g.eventCount);
+            if (fullActor[c]) fullActors += actorClassSize[c];
+        }
+        for (int d=0; d<h.length; d++) {
+            fullEvent[d] = (h[d] == g.actorCount);
+            if (fullEvent[d]) fullEvents += eventClassSize[d];
+        }
+        for (int c=0; c<k.length; c++) k[c] -= fullEvents;   // degrees without the edges to full classes
+        for (int d=0; d<h.length; d++) h[d] -= fullActors;
+
+        double[] x = new double[k.length];
+        double[] y = new double[h.length];
+        double root = Math.sqrt(g.edgeCount);               // start from the sparse approximation x[c]y[d] = k[c]h[d]/E
+        for (int c=0; c<k.length; c++) x[c] = k[c] / root;
+        for (int d=0; d<h.length; d++) y[d] = h[d] / root;
+        for (iterations=1; iterations<=maxIterations; iterations++) {
+            for (int c=0; c<k.length; c++) {
+                if (fullActor[c]) continue;
+                double sum = 0;
+                for (int d=0; d<h.length; d++) {
+                    if (!fullEvent[d]) sum += eventClassSize[d] * y[d] / (1 + x[c]*y[d]);
+                }
+                x[c] = (k[c] == 0) ? 0 : k[c] / sum;
+            }
+            for (int d=0; d<h.length; d++) {
+                if (fullEvent[d]) continue;
+                double sum = 0;
+                for (int c=0; c<k.length; c++) {
+                    if (!fullActor[c]) sum += actorClassSize[c] * x[c] / (1 + x[c]*y[d]);
+                }
+                y[d] = (h[d] == 0) ? 0 : h[d] / sum;
+            }
+            degreeError = 0;
+            for (int c=0; c<k.length; c++) {
+                if (fullActor[c]) continue;
+                double expected = 0;
+                for (int d=0; d<h.length; d++) {
+                    if (!fullEvent[d]) expected += eventClassSize[d] * x[c]*y[d] / (1 + x[c]*y[d]);
+                }
+                degreeError = Math.max(degreeError, Math.abs(expected - k[c]));
+            }
+            if (degreeError < tolerance) break;
+        }
+        if (degreeError >= tolerance) {
+            System.out.println("BiCM fit did not converge, expected degrees deviate by up to " + degreeError + ".");
+        }
+
+        prob = new double[k.length][h.length];
+        for (int c=0; c<k.length; c++) {
+            for (int d=0; d<h.length; d++) {
+                prob[c][d] = (fullActor[c] || fullEvent[d]) ? 1 : x[c]*y[d] / (1 + x[c]*y[d]);
+            }
+        }
+    }
+
+    /**
+     * Groups nodes by their degree
+     * @param degrees degrees[n] = degree of node n
+     * @param classOf is filled with the class of each node
+     * @return distinct degrees in ascending order, one per class
+     */
+    private static int[] degreeClasses(int[] degrees, int[] classOf) {
+        int[] sorted = degrees.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i=0; i<sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i-1]) sorted[count++] = sorted[i];
+        }
+        int[] classes = Arrays.copyOf(sorted, count);
+        for (int n=0; n<degrees.length; n++) classOf[n] = Arrays.binarySearch(classes, degrees[n]);
+        return classes;
+    }
+
+    /**
+     * Computes the co-occurrences of an actor in the original graph and their expectation,
+     * variance and p-value under the BiCM
+     */
+    public void doPerActorBeforeSampling(int a) {
+        result[a] = index.coocs(g.adjList[a], a+1, -1);             // pairs (actorID, cooc) of all co-occurring actors with higher ID
+        moments[a] = new double[3*result[a].length/2];
+        double[] pmf = new double[g.degrees[a]];                    // buffers for the distribution of one pair, no
+        double[] next = new double[g.degrees[a]];                   // cooc of this actor exceeds its degree
+        double[] binom = new double[g.degrees[a]];
+        for (int i=0; i<result[a].length/2; i++) {
+            int b = result[a][2*i];
+            computeMoments(prob[actorClass[a]], prob[actorClass[b]], result[a][2*i+1], moments[a], 3*i, pmf, next, binom);
+        }
+    }
+
+    /**
+     * Computes the expectation and variance of the co-occurrence of two actors and the probability
+     * that it is at least the observed one. The co-occurrence in each event class is binomial with
+     * the product of the edge probabilities of both actors, so the exact distribution below the
+     * observed cooc is the convolution of these binomials. Large coocs use a normal approximation.
+     * @param p1 edge probabilities of the first actor per event class
+     * @param p2 edge probabilities of the second actor per event class
+     * @param cooc observed co-occurrence
+     * @param out expected cooc, variance and p-value are written to this array
+     * @param pos position of the expected cooc in out
+     * @param pmf buffer of length cooc or more
+     * @param next buffer of length cooc or more
+     * @param binom buffer of length cooc or more
+     */
+    private void computeMoments(double[] p1, double[] p2, int cooc, double[] out, int pos, double[] pmf, double[] next,
+            double[] binom) {
+        double mean = 0;
+        double variance = 0;
+        for (int d=0; d<eventClassSize.length; d++) {
+            double q = p1[d]*p2[d];
+            mean += eventClassSize[d] * q;
+            variance += eventClassSize[d] * q * (1-q);
+        }
+        double pvalue;
+        if (cooc > exactLimit) {                                    // normal approximation with continuity correction
+            pvalue = 0.5 * Erf.erfc((cooc - 0.5 - mean) / Math.sqrt(2*variance));
+        } else {
+            Arrays.fill(pmf, 0, cooc, 0);                           // distribution of the cooc, truncated below cooc
+            pmf[0] = 1;
+            for (int d=0; d<eventClassSize.length; d++) {
+                addBinomial(pmf, next, binom, cooc, eventClassSize[d], p1[d]*p2[d]);
+            }
+            double below = 0;
+            for (int s=0; s<cooc; s++) below += pmf[s];
+            pvalue = Math.max(0, 1 - below);
+        }
+        out[pos] = mean;
+        out[pos+1] = variance;
+        out[pos+2] = pvalue;
+    }
+
+    /**
+     * Convolves a distribution truncated to its first values with a binomial distribution
+     * @param pmf probabilities of the values 0 to length-1, replaced by the convolution
+     * @param next buffer of at least the same length
+     * @param binom buffer of at least the same length for the binomial distribution
+     * @param length number of values kept
+     * @param n number of trials
+     * @param q success probability
+     */
+    private static void addBinomial(double[] pmf, double[] next, double[] binom, int length, int n, double q) {
+        if (q == 0) return;
+        int max = Math.min(n, length-1);                            // largest number of successes that is kept
+        if (q == 1) {
+            Arrays.fill(binom, 0, max+1, 0);
+            if (n <= max) binom[n] = 1;
+        } else {
+            double logRatio = Math.log(q) - Math.log1p(-q);
+            double logProb = n * Math.log1p(-q);                    // log probability of no success
+            for (int j=0; j<=max; j++) {
+                binom[j] = Math.exp(logProb);
+                logProb += Math.log(n-j) - Math.log(j+1) + logRatio;
+            }
+        }
+        for (int s=0; s<length; s++) {
+            double sum = 0;
+            for (int j=0; j<=Math.min(s, max); j++) sum += pmf[s-j] * binom[j];
+            next[s] = sum;
+        }
+        System.arraycopy(next, 0, pmf, 0, length);
+    }
+
+}
@@ -1,10 +1,12 @@
 package projection.impl;
 
-import java.util.LinkedList;
 
+import projection.abstr.CoocIndex;
 import projection.abstr.DuplexProjection;
+import projection.abstr.Projection;
 
 import graph.DuplexGraph;
+import graph.Graph;
 
 /**
  * Projection that implements the computation of leverages as weights
@@ -25,6 +27,9 @@ public class LeverageDuplexProjection extends DuplexProjection {
     public int[][] resultMix;     // like the other two result sturctures. However, it stores results for edges
                                   // between this actor and others, even if the second actors ID is lower as
                                   // we are looking at directed -+ edges here.
+    public int[][] cachePos;      // cachePos[n] contains the co-occurrences of the pairs in resultPos[n] in the current
+    public int[][] cacheNeg;      // sample, cacheNeg and cacheMix those of resultNeg and resultMix. They are only
+    public int[][] cacheMix;      // recomputed if one of the actors was changed by the sampler
     
     
     public LeverageDuplexProjection(DuplexGraph graph) {
@@ -39,6 +44,12 @@ public class LeverageDuplexProjection extends DuplexProjection {
         resultPos = new int[g.actorCount][];    // make sure a list for the initial posCooc exists
         resultNeg = new int[g.actorCount][];    // make sure a list for the initial negCooc exists
         resultMix = new int[g.actorCount][];    // make sure a list for the initial mixedCooc exists
+        posIndex = new CoocIndex(g.adjListPos, g.eventCount);   // inverted indices for the initial coocs
+        negIndex = new CoocIndex(g.adjListNeg, g.eventCount);
+        cachePos = new int[g.actorCount][];
+        cacheNeg = new int[g.actorCount][];
+        cacheMix = new int[g.actorCount][];
+        initEngines();
     }
     
     /**
@@ -46,69 +57,46 @@ public class LeverageDuplexProjection extends DuplexProjection {
      * all actors in the original graph
      */
     public void doPerActorBeforeSampling(int a) {
-        LinkedList<Integer> tmpCoocs = new LinkedList<Integer>();   // create a list for new ++ coocs as their number is not known
-        for (int b=a+1; b<g.actorCount; b++) {                  // for all actors b with ID higher than a
-            int cooc = computeCooc(g.adjListPos[a], g.adjListPos[b]);   // compute their co-occurence
-            if (cooc > 0) {                                     // if they do co-occur
-                tmpCoocs.add(b);                                // add the ID of actor b to the list
-                tmpCoocs.add(cooc);                             // and add the co-occurence
-            }
-        }
+        int[] pairs = posIndex.coocs(g.adjListPos[a], a+1, -1); // pairs (actorID, cooc) of all actors with higher ID
         /* create an int array that has 3 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: counter for observed cooc */
-        resultPos[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        int pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            resultPos[a][pos++] = tmpCoocs.remove();
-            resultPos[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave one space for observed cooc
+        resultPos[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            resultPos[a][3*i] = pairs[2*i];
+            resultPos[a][3*i+1] = pairs[2*i+1];
         }
         
         // Compute initial -- co-occurences
-        for (int b=a+1; b<g.actorCount; b++) {                  // for all actors b with ID higher than a
-            int cooc = computeCooc(g.adjListNeg[a], g.adjListNeg[b]);   // compute their co-occurence
-            if (cooc > 0) {                                     // if they do co-occur
-                tmpCoocs.add(b);                                // add the ID of actor b to the list
-                tmpCoocs.add(cooc);                             // and add the co-occurence
-            }
-        }
+        pairs = negIndex.coocs(g.adjListNeg[a], a+1, -1);       // pairs (actorID, cooc) of all actors with higher ID
         /* create an int array that has 3 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: counter for observed cooc */
-        resultNeg[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            resultNeg[a][pos++] = tmpCoocs.remove();
-            resultNeg[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave one space for observed cooc
+        resultNeg[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            resultNeg[a][3*i] = pairs[2*i];
+            resultNeg[a][3*i+1] = pairs[2*i+1];
         }
 
         /* Now compute initial -+ coocs. Here it is important to go through all other actors
          * each time, not just those that have a higher ID since we only look at negative outgoing
          * and positive incoming edges. */
-        for (int b=0; b<g.actorCount; b++) {                  // for all other actors b
-            if (a != b) {
-                int cooc = computeCooc(g.adjListNeg[a], g.adjListPos[b]);   // compute their co-occurence
-                if (cooc > 0) {                                     // if they do co-occur
-                    tmpCoocs.add(b);                                // add the ID of actor b to the list
-                    tmpCoocs.add(cooc);                             // and add the co-occurence
-                }
-            }
-        }
+        pairs = posIndex.coocs(g.adjListNeg[a], 0, a);          // pairs (actorID, cooc) of all other actors
         /* create an int array that has 3 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: counter for observed cooc */
-        resultMix[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            resultMix[a][pos++] = tmpCoocs.remove();
-            resultMix[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave one space for observed cooc
+        resultMix[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            resultMix[a][3*i] = pairs[2*i];
+            resultMix[a][3*i+1] = pairs[2*i+1];
         }
+        cachePos[a] = initialCache(resultPos[a]);       // the sampler starts from the original graph
+        cacheNeg[a] = initialCache(resultNeg[a]);
+        cacheMix[a] = initialCache(resultMix[a]);
+        chooseEngines(a, resultPos[a], resultNeg[a], resultMix[a]);
     }
     
     /**
@@ -116,38 +104,73 @@ public class LeverageDuplexProjection extends DuplexProjection {
      * original graph, if the p-value count for this edge should be increased.
      */
     public void doPerActorDuringSampling(int ac1) {
+        // bring the coocs of all tracked pairs up to date with this sample
+        updateCache(enginePos[ac1], g.posIndex, ac1, g.adjListPos[ac1], g.adjListPos, ac1+1, resultPos[ac1], cachePos[ac1]);
+        updateCache(engineNeg[ac1], g.negIndex, ac1, g.adjListNeg[ac1], g.adjListNeg, ac1+1, resultNeg[ac1], cacheNeg[ac1]);
+        updateCache(engineMix[ac1], g.posIndex, ac1, g.adjListNeg[ac1], g.adjListPos, 0, resultMix[ac1], cacheMix[ac1]);
         int ac2;
+        int pair = 0;
         int position = 0;
         while (position < resultPos[ac1].length) {      // go through the lists of initial coocs
             ac2 = resultPos[ac1][position];             // get IDs of target actors
             position += 2;
             // compute cooc for this pair of actors and add it to cooc count
-            int cooc = computeCooc(g.adjListPos[ac1], g.adjListPos[ac2]);
+            int cooc = cachePos[ac1][pair++];
             resultPos[ac1][position] += cooc;
             position++;
         }
         
         // compute cooc counts for -- coocs
         position = 0;
+        pair = 0;
         while (position < resultNeg[ac1].length) {      // go through the lists of initial coocs
             ac2 = resultNeg[ac1][position];             // get IDs of target actors
             position += 2;
             // compute cooc for this pair of actors and add it to cooc count
-            int cooc = computeCooc(g.adjListNeg[ac1], g.adjListNeg[ac2]);
+            int cooc = cacheNeg[ac1][pair++];
             resultNeg[ac1][position] += cooc;
             position++;
         }
 
         // compute cooc counts for -+ coocs
         position = 0;
+        pair = 0;
         while (position < resultMix[ac1].length) {      // go through the lists of initial coocs
             ac2 = resultMix[ac1][position];             // get IDs of target actors
             position += 2;
             // compute cooc for this pair of actors and add it to cooc count
-            int cooc = computeCooc(g.adjListNeg[ac1], g.adjListPos[ac2]);
+            int cooc = cacheMix[ac1][pair++];
             resultMix[ac1][position] += cooc;
             position++;
         }
     }
     
+    /**
+     * Creates a projection for an independent chain that shares the initial co-occurrences
+     */
+    public Projection createChainProjection(Graph chain) {
+        LeverageDuplexProjection proj = new LeverageDuplexProjection((DuplexGraph)chain);
+        proj.resultPos = copyInitialCoocs(resultPos);
+        proj.resultNeg = copyInitialCoocs(resultNeg);
+        proj.resultMix = copyInitialCoocs(resultMix);
+        proj.cachePos = copyCache(cachePos);
+        proj.cacheNeg = copyCache(cacheNeg);
+        proj.cacheMix = copyCache(cacheMix);
+        proj.enginePos = enginePos;                     // the chain uses the same engines for each actor
+        proj.engineNeg = engineNeg;
+        proj.engineMix = engineMix;
+        proj.marker = marker;                           // marks are kept per thread
+        return proj;
+    }
+    
+    /**
+     * Adds the cooc counts of an independent chain to this projection
+     */
+    public void mergeChainProjection(Projection chainProjection) {
+        LeverageDuplexProjection proj = (LeverageDuplexProjection)chainProjection;
+        addCounters(resultPos, proj.resultPos);
+        addCounters(resultNeg, proj.resultNeg);
+        addCounters(resultMix, proj.resultMix);
+    }
+    
 }
@@ -1,9 +1,11 @@
 package projection.impl;
 
-import java.util.LinkedList;
 
+import projection.abstr.CoocIndex;
+import projection.abstr.Projection;
 import projection.abstr.SimplexProjection;
 
+import graph.Graph;
 import graph.SimplexGraph;
 
 /**
@@ -20,6 +22,8 @@ public class LeverageSimplexProjection extends SimplexProjection {
                                 // actorIDs can be found at positions 3i
                                 // initial co-occurrences can be found at positions 3i +1
                                 // cooc counts are stored at positions 3i +2
+    public int[][] cache;       // cache[n] contains the co-occurrences of the pairs in result[n] in the current sample.
+                                // They are only recomputed if one of the actors was changed by the sampler
     
     public LeverageSimplexProjection(SimplexGraph graph) {
         super(graph);
@@ -31,31 +35,29 @@ public class LeverageSimplexProjection extends SimplexProjection {
      */
     public void doOnceBeforeSampling() {
         result = new int[g.actorCount][];    // make sure a list for the initial cooc exists
+        index = new CoocIndex(g.adjList, g.eventCount);  // inverted index for the initial coocs
+        cache = new int[g.actorCount][];
+        if (isWeighted()) initWeights();
+        initEngines();
     }
     
     /**
      * Computes the initial co-occurrences of all actors in the original graph
      */
     public void doPerActorBeforeSampling(int a) {
-        LinkedList<Integer> tmpCoocs = new LinkedList<Integer>();   // create a list for new coocs as their number is not known
-        for (int b=a+1; b<g.actorCount; b++) {                      // for all actors B with ID higher than a
-            int cooc = computeCooc(g.adjList[a], g.adjList[b]);     // compute their co-occurence
-            if (cooc > 0) {                                         // if they do co-occur
-                tmpCoocs.add(b);                                    // add the ID of actor b to the list
-                tmpCoocs.add(cooc);                                 // and add the co-occurence
-            }
-        }
+        int[] pairs = index.coocs(g.adjList[a], a+1, -1);          // pairs (actorID, cooc) of all co-occurring actors with higher ID
         /* create an int array that has 3 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: counter for observed cooc */
-        result[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        int pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            result[a][pos++] = tmpCoocs.remove();
-            result[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave one space for observed cooc
+        result[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            result[a][3*i] = pairs[2*i];
+            result[a][3*i+1] = pairs[2*i+1];
         }
+        cache[a] = initialCache(result[a]);             // the sampler starts from the original graph
+        chooseEngine(a, result[a]);
+        if (isWeighted()) weighted[a] = new double[result[a].length/3];   // one weighted cooc sum per cooc
     }
     
     /**
@@ -63,16 +65,76 @@ public class LeverageSimplexProjection extends SimplexProjection {
      * a co-occurrence in the initial graph and adds it to the cooc count.
      */
     public void doPerActorDuringSampling(int ac1) {
+        if (isWeighted()) {
+            doWeightedDuringSampling(ac1);
+            return;
+        }
         int ac2;
         int coocPos = 0;
+        int pair = 0;
+        int[] sampled = sampleCoocs(ac1, result[ac1], cache[ac1]);  // coocs of all tracked pairs in this sample
         while (coocPos < result[ac1].length) {      // go through the lists of initial coocs
             ac2 = result[ac1][coocPos];             // get IDs of target actors
             coocPos += 2;
             // compute cooc for this pair of actors and add it to cooc count
-            int cooc = computeCooc(g.adjList[ac1], g.adjList[ac2]);
+            int cooc = sampled[pair++];
             result[ac1][coocPos] += cooc;
             coocPos++;
         }
     }
     
+    /**
+     * Same as doPerActorDuringSampling, but adds the cooc times the weight of the sample to the weighted sums
+     */
+    private void doWeightedDuringSampling(int ac1) {
+        double weight = sampleWeight(ac1);
+        double[] w = weighted[ac1];
+        for (int i=0; i<w.length; i++) {
+            int ac2 = result[ac1][3*i];
+            w[i] += weight * g.cooc(ac1, ac2);
+        }
+    }
+    
+    /**
+     * Converts the weighted sums of importance sampling to cooc counts
+     */
+    public void doOnceAfterSampling() {
+        if (!isWeighted()) return;
+        for (int a=0; a<g.actorCount; a++) {
+            for (int i=0; i<weighted[a].length; i++) {
+                result[a][3*i+2] = (int)Math.round(weightedCount(a, i));
+            }
+        }
+        computeEffectiveSamples();
+    }
+    
+    /**
+     * Returns the result structure, all pairs in it are tracked
+     */
+    public int[][] trackedPairs() {
+        return result;
+    }
+    
+    /**
+     * Creates a projection for an independent chain that shares the initial co-occurrences
+     */
+    public Projection createChainProjection(Graph chain) {
+        LeverageSimplexProjection proj = new LeverageSimplexProjection((SimplexGraph)chain);
+        proj.result = copyInitialCoocs(result);
+        proj.cache = copyCache(cache);
+        proj.engine = engine;                           // the chain uses the same engines for each actor
+        proj.marker = marker;                           // marks are kept per thread
+        if (isWeighted()) proj.initWeights(this);
+        return proj;
+    }
+    
+    /**
+     * Adds the cooc counts of an independent chain to this projection
+     */
+    public void mergeChainProjection(Projection chainProjection) {
+        LeverageSimplexProjection proj = (LeverageSimplexProjection)chainProjection;
+        addCounters(result, proj.result);
+        if (isWeighted()) mergeWeights(proj);
+    }
+    
 }
@@ -1,7 +1,9 @@
 package projection.impl;
 
-import java.util.LinkedList;
+import projection.abstr.CoocIndex;
+import projection.abstr.Projection;
 import projection.abstr.SimplexProjection;
+import graph.Graph;
 import graph.SimplexGraph;
 
 /**
@@ -25,9 +27,12 @@ public class PNASProjection extends SimplexProjection {
     public int[][] adjmatrix;   // structure for storing the edgecounts in the sampled graphs
                                 // adjmatrix[x][y] contains the number of sampled graphs
                                 // in which an edge between actor x and event y exists.
+                                // Independent chains share it and count into it row by row
     public double[][] cmatrix;  // structure for storing the "centered" adjacency matrix of the graph
                                 // will be initialized to contain 1s and 0s according to the original graph
     public double[] norm;       // structure for storing the euclidean norms of all actor-vectors
+    public int[][] cache;       // cache[n] contains the co-occurrences of the pairs in result[n] in the current sample.
+                                // They are only recomputed if one of the actors was changed by the sampler
     
     public PNASProjection(SimplexGraph graph) {
         super(graph);
@@ -39,6 +44,8 @@ public class PNASProjection extends SimplexProjection {
      */
     public void doOnceBeforeSampling() {
         result = new int[g.actorCount][];    // make sure a list for the initial cooc exists
+        index = new CoocIndex(g.adjList, g.eventCount);  // inverted index for the initial coocs
+        cache = new int[g.actorCount][];
         coocs = new long[g.actorCount][];
         adjmatrix = new int[g.actorCount][g.eventCount];    // create an empty matrix for adjacency counts
         cmatrix = new double[g.actorCount][g.eventCount];   // create an empty adjacency matrix
@@ -54,29 +61,21 @@ public class PNASProjection extends SimplexProjection {
      * Computes the initial co-occurrences of all actors in the original graph
      */
     public void doPerActorBeforeSampling(int a) {
-        LinkedList<Integer> tmpCoocs = new LinkedList<Integer>();   // create a list for new coocs as their number is not known
-        for (int b=a+1; b<g.actorCount; b++) {                      // for all actors B with ID higher than a
-            int cooc = computeCooc(g.adjList[a], g.adjList[b]);     // compute their co-occurence
-            if (cooc > 0) {                                         // if they do co-occur
-                tmpCoocs.add(b);                                    // add the ID of actor b to the list
-                tmpCoocs.add(cooc);                                 // and add the co-occurence
-            }
-        }
+        int[] pairs = index.coocs(g.adjList[a], a+1, -1);          // pairs (actorID, cooc) of all co-occurring actors with higher ID
         /* create an int array that has 2 entries for each cooc of actor a:
          * position i  : counter for observed cooc
          * position i+1: counter for observed cooc squares */
-        coocs[a] = new long[tmpCoocs.size()];
+        coocs[a] = new long[pairs.length];
         /* create an int array that has 3 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: p-value counts */
-        result[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        int pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            result[a][pos++] = tmpCoocs.remove();
-            result[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave three spaces for observed coocm cooc squares and p-value counts
+        result[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            result[a][3*i] = pairs[2*i];
+            result[a][3*i+1] = pairs[2*i+1];
         }
+        cache[a] = initialCache(result[a]);             // the sampler starts from the original graph
     }
     
     /**
@@ -87,18 +86,22 @@ public class PNASProjection extends SimplexProjection {
         int ac2;
         int resPos = 0;
         int coocPos = 0;
+        int pair = 0;
         while (resPos < result[ac1].length) {      // go through the lists of initial coocs
             ac2 = (int)result[ac1][resPos++];      // get IDs of target actors
             // compute cooc for this pair of actors and add it to cooc count
-            int cooc = computeCooc(g.adjList[ac1], g.adjList[ac2]);
+            int cooc = sampleCooc(cache[ac1], pair++, ac1, ac2);
             long initCooc = result[ac1][resPos++];
             if (cooc >= initCooc) result[ac1][resPos]++;
             resPos++;
             coocs[ac1][coocPos++] += cooc;
             coocs[ac1][coocPos++] += cooc*cooc;
         }
-        for (int e : g.adjList[ac1]) {         // for all edges incident to this actor
-            adjmatrix[ac1][e]++;               // increase edgecounter in adjacency matrix
+        int[] row = adjmatrix[ac1];
+        synchronized (row) {                   // independent chains may count the same actor at once
+            for (int e : g.adjList[ac1]) {     // for all edges incident to this actor
+                row[e]++;                      // increase edgecounter in adjacency matrix
+            }
         }
     }
     
@@ -118,4 +121,34 @@ public class PNASProjection extends SimplexProjection {
         
     }
     
+    /**
+     * Returns the result structure, all pairs in it are tracked
+     */
+    public int[][] trackedPairs() {
+        return result;
+    }
+    
+    /**
+     * Creates a projection for an independent chain that shares the initial co-occurrences.
+     * The edge counts are shared as well, instead of a dense matrix per chain.
+     */
+    public Projection createChainProjection(Graph chain) {
+        PNASProjection proj = new PNASProjection((SimplexGraph)chain);
+        proj.result = copyInitialCoocs(result);
+        proj.cache = copyCache(cache);
+        proj.coocs = copyShape(coocs);
+        proj.adjmatrix = adjmatrix;                 // the chain counts its edges into the shared matrix
+        return proj;
+    }
+    
+    /**
+     * Adds the p-value counts and cooc sums of an independent chain to this projection. The chain
+     * counted its edges in the shared matrix already.
+     */
+    public void mergeChainProjection(Projection chainProjection) {
+        PNASProjection proj = (PNASProjection)chainProjection;
+        addCounters(result, proj.result);
+        addCounters(coocs, proj.coocs);
+    }
+    
 }
@@ -1,16 +1,26 @@
 package projection.impl;
 
-import java.util.LinkedList;
-
+import projection.abstr.CoocIndex;
+import projection.abstr.Projection;
 import projection.abstr.SimplexProjection;
 
+import graph.Graph;
 import graph.SimplexGraph;
 
 /**
  * Projection that implements the computation of p-values as weights
  * for the edges of the projection. Only use with SIMPLEX graphs.
+ * 
+ * Pairs can stop being sampled early (Besag and Clifford, "Sequential Monte Carlo p-values").
+ * After a minimum number of samples (so a few correlated samples cannot decide a pair), a pair is
+ * retired once its sampled cooc reached the initial cooc a given number of times, or once the
+ * confidence interval of its p-value lies entirely above or below alpha. Its p-value is
+ * then estimated from the samples it was evaluated for.
  */
 public class PvalueSimplexProjection extends SimplexProjection {
+    private static final double z = 3;      // width of the confidence interval for retiring pairs in standard deviations
+    private static final int minSamples = 100;  // samples before a pair can be retired
+    
     /* COMPUTED DATA
      * (this will be generated by the algorithm and does not need to be initialized) */
     public int[][] result;      // structure for storing initial co-occurrences and computed p-value counts
@@ -20,6 +30,12 @@ public class PvalueSimplexProjection extends SimplexProjection {
                                 // actorIDs can be found at positions 3i
                                 // initial co-occurrences can be found at positions 3i +1
                                 // p-value counts are stored at positions 3i +2
+    public int[][] cache;       // cache[n] contains the co-occurrences of the pairs in result[n] in the current sample.
+                                // They are only recomputed if one of the actors was changed by the sampler
+    public int[][] used;        // used[n][i] = number of samples the i-th pair in result[n] was evaluated for
+                                // (only if pairs stop early)
+    private int[][] active;     // active[n] contains the indices of the pairs of actor n that are still sampled
+    private int[] activeCount;  // activeCount[n] = number of pairs in active[n]
     
     public PvalueSimplexProjection(SimplexGraph graph) {
         super(graph);
@@ -31,44 +47,74 @@ public class PvalueSimplexProjection extends SimplexProjection {
      */
     public void doOnceBeforeSampling() {
         result = new int[g.actorCount][];    // make sure a list for the initial cooc exists
+        index = new CoocIndex(g.adjList, g.eventCount);  // inverted index for the initial coocs
+        cache = new int[g.actorCount][];
+        if (isWeighted()) initWeights();
+        if (g.settings.getExceedances() == 0 || g.settings.getPooledNull()) initEngines(); // sequential p-values only evaluate the pairs still sampled
+        if (g.settings.getExceedances() > 0) {
+            used = new int[g.actorCount][];
+            active = new int[g.actorCount][];
+            activeCount = new int[g.actorCount];
+        }
     }
     
     /**
      * Computes the initial co-occurrences of all actors in the original graph
      */
     public void doPerActorBeforeSampling(int a) {
-        LinkedList<Integer> tmpCoocs = new LinkedList<Integer>();   // create a list for new coocs as their number is not known
-        for (int b=a+1; b<g.actorCount; b++) {                      // for all actors B with ID higher than a
-            int cooc = computeCooc(g.adjList[a], g.adjList[b]);     // compute their co-occurence
-            if (cooc > 0) {                                         // if they do co-occur
-                tmpCoocs.add(b);                                    // add the ID of actor b to the list
-                tmpCoocs.add(cooc);                                 // and add the co-occurence
-            }
-        }
+        int[] pairs = index.coocs(g.adjList[a], a+1, -1);          // pairs (actorID, cooc) of all co-occurring actors with higher ID
         /* create an int array that has 3 entries for each cooc of actor a:
          * position i:   ID of target node
          * position i+1: initial cooc for these two nodes
          * position i+2: counter for observed cooc */
-        result[a] = new int[tmpCoocs.size() + tmpCoocs.size()/2];
-        int pos = 0;
-        while (!tmpCoocs.isEmpty()) {                   // copy actor IDs and coocs from list to array
-            result[a][pos++] = tmpCoocs.remove();
-            result[a][pos] = tmpCoocs.remove();
-            pos += 2;                                   // leave one space for observed cooc
+        result[a] = new int[pairs.length + pairs.length/2];
+        for (int i=0; i<pairs.length/2; i++) {          // copy actor IDs and coocs from the pairs
+            result[a][3*i] = pairs[2*i];
+            result[a][3*i+1] = pairs[2*i+1];
+        }
+        cache[a] = initialCache(result[a]);             // the sampler starts from the original graph
+        chooseEngine(a, result[a]);
+        if (isWeighted()) weighted[a] = new double[result[a].length/3];   // one weighted counter per cooc
+        if (g.settings.getExceedances() > 0) {
+            used[a] = new int[result[a].length/3];
+            activate(a);
         }
     }
     
+    /**
+     * Marks all pairs of an actor as being sampled
+     */
+    private void activate(int a) {
+        active[a] = new int[used[a].length];
+        for (int i=0; i<active[a].length; i++) active[a][i] = i;
+        activeCount[a] = active[a].length;
+    }
+    
     /**
      * After each new graph is sampled, this checks for each co-occurrence of two nodes in the
      * original graph, if the p-value count for this edge should be increased.
      */
     public void doPerActorDuringSampling(int ac1) {
+        if (isWeighted()) {
+            doWeightedDuringSampling(ac1);
+            return;
+        }
+        if (g.settings.getPooledNull()) {
+            poolDuringSampling(ac1, result[ac1], cache[ac1]);
+            return;
+        }
+        if (g.settings.getExceedances() > 0) {
+            doSequentialDuringSampling(ac1);
+            return;
+        }
         int ac2;
         int coocPos = 0;
+        int pair = 0;
+        int[] sampled = sampleCoocs(ac1, result[ac1], cache[ac1]);  // coocs of all tracked pairs in this sample
         while (coocPos < result[ac1].length) {      // go through the lists of initial coocs
             ac2 = result[ac1][coocPos];             // get IDs of target actors
             coocPos++;
-            int cooc = computeCooc(g.adjList[ac1], g.adjList[ac2]);
+            int cooc = sampled[pair++];
             // compute cooc for this pair of actors. If it is larger than initial cooc: increment counter
             if (cooc >= result[ac1][coocPos]) {
                 coocPos++;
@@ -78,4 +124,119 @@ public class PvalueSimplexProjection extends SimplexProjection {
         }
     }
     
+    /**
+     * Same as doPerActorDuringSampling, but only for the pairs that are still sampled. Pairs that are
+     * decided are swapped to the end of the active list, so they are not visited again.
+     */
+    private void doSequentialDuringSampling(int ac1) {
+        int[] act = active[ac1];
+        int[] res = result[ac1];
+        int j = 0;
+        while (j < activeCount[ac1]) {
+            int i = act[j];
+            int cooc = sampleCooc(cache[ac1], i, ac1, res[3*i]);
+            if (cooc >= res[3*i+1]) res[3*i+2]++;
+            used[ac1][i]++;
+            if (isDecided(res[3*i+2], used[ac1][i])) {
+                act[j] = act[--activeCount[ac1]];      // retire the pair, the last active one takes its place
+            } else j++;
+        }
+    }
+    
+    /**
+     * A pair is decided after the minimum number of samples, once it reached the maximum number of
+     * exceedances or the Wilson score interval of its p-value lies entirely above or below alpha.
+     * Both rules wait for the minimum, as a p-value estimated from a few samples is too coarse.
+     * @param count number of samples with a cooc of at least the initial one
+     * @param n number of samples evaluated
+     * @return true if the pair does not need to be sampled any more
+     */
+    private boolean isDecided(int count, int n) {
+        if (n < minSamples) return false;
+        if (count >= g.settings.getExceedances()) return true;
+        double p = (double)count / n;
+        double center = (p + z*z/(2*n)) / (1 + z*z/n);
+        double halfWidth = z * Math.sqrt(p*(1-p)/n + z*z/(4.0*n*n)) / (1 + z*z/n);
+        double alpha = g.settings.getAlpha();
+        return (center + halfWidth < alpha) || (center - halfWidth > alpha);
+    }
+    
+    /**
+     * Same as doPerActorDuringSampling, but adds the weight of the sample to the weighted counters
+     */
+    private void doWeightedDuringSampling(int ac1) {
+        double weight = sampleWeight(ac1);
+        double[] w = weighted[ac1];
+        for (int i=0; i<w.length; i++) {
+            int ac2 = result[ac1][3*i];
+            if (g.cooc(ac1, ac2) >= result[ac1][3*i+1]) w[i] += weight;
+        }
+    }
+    
+    /**
+     * Converts the weighted counters of importance sampling to p-value counts,
+     * or computes the pooled null distributions
+     */
+    public void doOnceAfterSampling() {
+        if (g.settings.getPooledNull()) pool().finish();
+        if (!isWeighted()) return;
+        for (int a=0; a<g.actorCount; a++) {
+            for (int i=0; i<weighted[a].length; i++) {
+                result[a][3*i+2] = (int)Math.round(weightedCount(a, i));
+            }
+        }
+        computeEffectiveSamples();
+    }
+    
+    /**
+     * Returns the largest standard error of all p-values up to twice alpha
+     */
+    public double pvalueError(int samples, double effectiveSamples, double alpha) {
+        return maxPvalueError(result, samples, effectiveSamples, alpha);
+    }
+    
+    /**
+     * Returns the result structure, all pairs in it are tracked
+     */
+    public int[][] trackedPairs() {
+        return result;
+    }
+    
+    /**
+     * Creates a projection for an independent chain that shares the initial co-occurrences
+     */
+    public Projection createChainProjection(Graph chain) {
+        PvalueSimplexProjection proj = new PvalueSimplexProjection((SimplexGraph)chain);
+        proj.result = copyInitialCoocs(result);
+        proj.cache = copyCache(cache);
+        proj.engine = engine;                           // the chain uses the same engines for each actor
+        proj.marker = marker;                           // marks are kept per thread
+        if (g.settings.getPooledNull()) proj.pool = pool(); // all chains count in the same pooled distributions
+        if (isWeighted()) proj.initWeights(this);
+        if (g.settings.getExceedances() > 0) {          // each chain stops its pairs on its own
+            proj.used = new int[g.actorCount][];
+            proj.active = new int[g.actorCount][];
+            proj.activeCount = new int[g.actorCount];
+            for (int a=0; a<g.actorCount; a++) {
+                proj.used[a] = new int[used[a].length];
+                proj.activate(a);
+            }
+        }
+        return proj;
+    }
+    
+    /**
+     * Adds the p-value counts of an independent chain to this projection
+     */
+    public void mergeChainProjection(Projection chainProjection) {
+        PvalueSimplexProjection proj = (PvalueSimplexProjection)chainProjection;
+        addCounters(result, proj.result);
+        if (isWeighted()) mergeWeights(proj);
+        if (g.settings.getExceedances() > 0) {
+            for (int a=0; a<g.actorCount; a++) {
+                for (int i=0; i<used[a].length; i++) used[a][i] += proj.used[a][i];
+            }
+        }
+    }
+    
 }
@@ -0,0 +1,209 @@
+/*  Copyright (c) 2012  Andreas Spitz, spitz@stud.uni-heidelberg.de
+ *
+ *  This file is part of VertexVortex
+ *
+ *  VertexVortex is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  VertexVortex is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tool;
+
+import graph.DuplexGraph;
+import graph.Graph;
+import graph.Intersection;
+import graph.SimplexGraph;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.Arrays;
+
+/**
+ * Saves the randomized graph of a markov chain to file and reads it back, so a later
+ * run on the same input file can resume the chain without burn-in.
+ * Actors and events are stored by their internal IDs, which only depend on the input file
+ * and the projection side. With independent chains, the state of the first chain is saved and
+ * all chains resume from the same state.
+ */
+public class ChainState {
+    private static final String header = "#Chain state generated by VertexVortex";
+    private static final String sourceFile = "Source-File";
+    private static final String type = "Projection type";
+    private static final String side = "Projection side";
+    private static final String size = "Actors events edges";
+
+    /**
+     * Write the current adjacency lists of a graph to file.
+     * Simplex graphs use one line per actor: actor event event ...
+     * Duplex graphs use one line per actor and sign: actor + event ... and actor - event ...
+     * @param file output file handle
+     * @param g graph containing the final state of the chain
+     * @throws Exception
+     */
+    public static void write(File file, Graph g) throws Exception {
+        BufferedWriter output = new BufferedWriter(new FileWriter(file));
+        output.append(header + "\n");
+        output.append("#" + type + ((g.isSimplex) ? ": simplex" : ": duplex") + "\n");
+        output.append("#" + sourceFile + ": " + g.name + "\n");
+        output.append("#" + side + ": " + g.side + "\n");
+        output.append("#" + size + ": " + g.actorCount + " " + g.eventCount + " " + g.edgeCount + "\n");
+        if (g.isSimplex) {
+            SimplexGraph s = (SimplexGraph)g;
+            for (int a=0; a<s.actorCount; a++) {
+                writeList(output, a + "", s.adjList[a]);
+            }
+        } else {
+            DuplexGraph d = (DuplexGraph)g;
+            for (int a=0; a<d.actorCount; a++) {
+                writeList(output, a + " +", d.adjListPos[a]);
+                writeList(output, a + " -", d.adjListNeg[a]);
+            }
+        }
+        output.close();
+    }
+
+    private static void writeList(BufferedWriter output, String prefix, int[] events) throws Exception {
+        output.append(prefix);
+        for (int e : events) output.append(" " + e);
+        output.append("\n");
+    }
+
+    /**
+     * Read a chain state from file. The state has to belong to the same network as the given graph,
+     * i.e. all actors and events need to have the same degrees, so the chain resumes within the
+     * space of graphs it samples from.
+     * @param file input file handle
+     * @param g graph read from the same input file
+     * @return copy of the graph containing the randomized adjacency lists
+     * @throws Exception if the file does not match the graph
+     */
+    public static Graph read(File file, Graph g) throws Exception {
+        BufferedReader input = new BufferedReader(new FileReader(file));
+        Graph state = g.createChainCopy();
+        String line = input.readLine();
+        if (line == null || !line.equals(header)) {
+            input.close();
+            throw new Exception("Not a chain state file.");
+        }
+        while ((line = input.readLine()) != null && line.startsWith("#")) {     // check the header
+            String value = line.substring(line.indexOf(":")+2);
+            if (line.startsWith("#" + type) && !value.equals((g.isSimplex) ? "simplex" : "duplex")
+                || line.startsWith("#" + side) && !value.equals(g.side)
+                || line.startsWith("#" + size) && !value.equals(g.actorCount + " " + g.eventCount + " " + g.edgeCount)) {
+                input.close();
+                throw new Exception("Chain state does not match the input graph: " + line);
+            }
+        }
+        int lists = (g.isSimplex) ? g.actorCount : 2*g.actorCount;
+        boolean[] seen = new boolean[lists];                            // seen[i] is true once list i was read
+        for (int i=0; i<lists; i++, line = input.readLine()) {
+            if (line == null) {
+                input.close();
+                throw new Exception("Chain state is incomplete.");
+            }
+            String[] split = line.split(" ");
+            int a = Integer.parseInt(split[0]);
+            if (a < 0 || a >= g.actorCount) {
+                input.close();
+                throw new Exception("Chain state contains unknown actor " + a + ".");
+            }
+            int[] events;                                               // list the events are read into
+            int first = 1;                                              // index of the first event in the line
+            int list = a;                                               // index of the list in seen
+            if (g.isSimplex) {
+                events = ((SimplexGraph)state).adjList[a];
+            } else {
+                if (split.length < 2 || !split[1].equals("+") && !split[1].equals("-")) {
+                    input.close();
+                    throw new Exception("Chain state contains a list without sign for actor " + g.actorMap[a] + ".");
+                }
+                DuplexGraph d = (DuplexGraph)state;
+                boolean positive = split[1].equals("+");
+                events = (positive) ? d.adjListPos[a] : d.adjListNeg[a];
+                list = 2*a + ((positive) ? 0 : 1);
+                first = 2;
+            }
+            if (seen[list]) {                                           // every list is given exactly once
+                input.close();
+                throw new Exception("Chain state contains the events of actor " + g.actorMap[a] + " twice.");
+            }
+            seen[list] = true;
+            if (split.length - first != events.length) {                // degrees must not change
+                input.close();
+                throw new Exception("Chain state does not match the degree of actor " + g.actorMap[a] + ".");
+            }
+            for (int k=0; k<events.length; k++) {
+                events[k] = Integer.parseInt(split[first+k]);
+                if (events[k] < 0 || events[k] >= g.eventCount) {
+                    input.close();
+                    throw new Exception("Chain state contains unknown event " + events[k] + ".");
+                }
+            }
+            Arrays.sort(events);
+            for (int k=1; k<events.length; k++) {
+                if (events[k] == events[k-1]) {                         // multi-edges are not allowed
+                    input.close();
+                    throw new Exception("Chain state contains a multi-edge of actor " + g.actorMap[a] + ".");
+                }
+            }
+        }
+        input.close();
+        if (line != null && !line.isEmpty()) {
+            throw new Exception("Chain state contains more lists than the input graph has actors.");
+        }
+        checkEvents(state, g);
+        return state;
+    }
+
+    /**
+     * Checks that every event has the same degree in the chain state as in the observed graph,
+     * for duplex graphs separately for both signs, and that no actor of a duplex graph is connected
+     * to an event with both signs
+     * @param state graph read from a chain state
+     * @param g observed graph
+     * @throws Exception if the chain state is not a sample of the observed graph
+     */
+    private static void checkEvents(Graph state, Graph g) throws Exception {
+        if (g.isSimplex) {
+            if (!Arrays.equals(eventDegrees(((SimplexGraph)state).adjList, g.eventCount),
+                    eventDegrees(((SimplexGraph)g).adjList, g.eventCount))) {
+                throw new Exception("Chain state does not match the degrees of the events.");
+            }
+        } else {
+            DuplexGraph s = (DuplexGraph)state;
+            DuplexGraph d = (DuplexGraph)g;
+            if (!Arrays.equals(eventDegrees(s.adjListPos, g.eventCount), eventDegrees(d.adjListPos, g.eventCount))
+                    || !Arrays.equals(eventDegrees(s.adjListNeg, g.eventCount), eventDegrees(d.adjListNeg, g.eventCount))) {
+                throw new Exception("Chain state does not match the degrees of the events.");
+            }
+            for (int a=0; a<g.actorCount; a++) {
+                if (Intersection.count(s.adjListPos[a], s.adjListNeg[a]) > 0) {
+                    throw new Exception("Chain state connects actor " + g.actorMap[a] + " to an event with both signs.");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of actors connected to each event in the given adjacency lists
+     */
+    private static int[] eventDegrees(int[][] adjList, int eventCount) {
+        int[] degrees = new int[eventCount];
+        for (int[] list : adjList) {
+            for (int e : list) degrees[e]++;
+        }
+        return degrees;
+    }
+}
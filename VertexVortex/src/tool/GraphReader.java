@@ -20,6 +20,7 @@ package tool;
 
 import graph.DuplexGraph;
 import graph.Graph;
+import graph.SamplingSettings;
 import graph.SimplexGraph;
 import java.io.BufferedReader;
 import java.io.File;
@@ -54,7 +55,11 @@ public class GraphReader {
             g = readDuplexEdgeList(file, set.getProjectionSide());  // call function for reading duplex graphs
         }
         if (set.getSteps() <= 0) {                                  // if the user wants steps in FDSM algorithm to depend on the data set
-            g.steps = (int)(g.edgeCount * Math.log(g.edgeCount));   // compute m * log(m) where m is the number of edges
+            if (set.getSampler().equals("curveball")) {             // each trade mixes the lists of two actors at once, so
+                g.steps = (int)(g.actorCount * Math.log(g.actorCount)); // n * log(n) trades are used, n is the number of actors
+            } else {
+                g.steps = (int)(g.edgeCount * Math.log(g.edgeCount));   // compute m * log(m) where m is the number of edges
+            }
         } else {                                                    // otherwise
             g.steps = set.getSteps();                               // just use the number of steps requested
         }
@@ -65,10 +70,38 @@ public class GraphReader {
         }
         g.samples = set.getSamples();                               // store number of samples in graph object
         g.threads = set.getThreadCount();                           // and the number of threads
+        g.settings = readSamplingSettings(set, g.steps);            // and how the samples are drawn and evaluated
         g.side = (set.getProjectionSide()) ? "left" : "right";      // set string for output to left or right
         g.name = set.getInFileName();                               // and save name of input file for output
         return g;
     }
+    
+    /**
+     * Collects the settings of the sampler, the null model and the stopping rules for a graph
+     * @param set object containing program settings
+     * @param steps number of steps per sample of the graph
+     * @return settings shared by the graph and all chains copied from it
+     */
+    private static SamplingSettings readSamplingSettings(Settings set, int steps) {
+        SamplingSettings s = new SamplingSettings();
+        s.setSampler(set.getSampler());                             // the markov chain used for sampling
+        s.setRng(set.getRng());                                     // and the random number generator
+        s.setMixingTarget(set.getMixingTarget());                   // adapt steps if a target autocorrelation is set
+        s.setBurnin((set.getBurnin() < 0) ? steps : set.getBurnin());   // burn-in is as long as the walk between samples unless set
+        s.setSamplingMode(set.getSamplingMode());                   // how the samples are distributed over the threads
+        s.setHashedAdjacency(set.getHashedAdjacency());             // the adjacency representation for sampling
+        s.setSignedAdjacency(set.getSignedAdjacency());
+        s.setIncrementalCooc(set.getIncrementalCooc());             // how coocs are evaluated
+        s.setPooledNull(set.getPooledNull());                       // and how null distributions are counted
+        s.setExceedances(set.getExceedances());                     // when pairs stop being sampled
+        s.setAlpha(set.getAlpha());
+        s.setPvalueTarget(set.getPvalueTarget());                   // and when sampling stops
+        s.setLeverageTarget(set.getLeverageTarget());
+        s.setTimeLimit(set.getTimeLimit());
+        s.setActorModel(set.getActorModel());                       // the null model the samples are drawn from
+        s.setHubBitsets(set.getHubBitsets());                       // and the representation of the events of hubs
+        return s;
+    }
 
 	/**
 	 * Read network data from file for a simplex projection.
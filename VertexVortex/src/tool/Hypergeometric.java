@@ -24,4 +24,13 @@ public class Hypergeometric {
         similarity = -Math.log(similarity); // Goldberg and Roth "Assessing experimentally derived interactions in a small world" 
         return similarity;
     }
+    
+    /**
+     * Same as getHyperGeomSimilarity, but takes the upper tail from a single distribution object.
+     * Safe to call from multiple threads, as the random number generator is never used.
+     */
+    public double getUpperTailSimilarity(int deg1, int deg2, int numbercommonneighs, int numberrightsidenodes) {
+        HypergeometricDistribution hyp = new HypergeometricDistribution(r, numberrightsidenodes, deg1, deg2);
+        return -Math.log(hyp.upperCumulativeProbability(numbercommonneighs));
+    }
 }
\ No newline at end of file
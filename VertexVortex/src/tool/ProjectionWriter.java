@@ -20,6 +20,8 @@ package tool;
 
 import graph.DuplexGraph;
 import graph.Graph;
+import graph.MixingMonitor;
+import graph.SamplingSettings;
 import graph.SimplexGraph;
 
 import java.io.BufferedReader;
@@ -34,8 +36,11 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Locale;
 
+import projection.abstr.SimplexProjection;
 import projection.impl.AllDuplexProjection;
 import projection.impl.AllSimplexProjection;
+import projection.impl.AnalyticProjection;
+import projection.impl.BiCMProjection;
 import projection.impl.LeverageDuplexProjection;
 import projection.impl.LeverageSimplexProjection;
 import projection.impl.PNASProjection;
@@ -56,6 +61,16 @@ public class ProjectionWriter {
     private static final String side = "Projection side";
     private static final String decPrecision = "Decimal precision";
     private static final String weights = "Type of weights";
+    private static final String burnin = "Burn-in steps";
+    private static final String adaptive = "Adaptive steps";
+    private static final String mixingSummary = "Mixing";
+    private static final String effectiveSamples = "Effective sample size";
+    private static final String fit = "Model fit";
+    private static final String nullDistribution = "Null distribution";
+    private static final String sequential = "Sequential stopping";
+    private static final String target = "Target standard error";
+    private static final String timeLimit = "Time limit";
+    private static final String nullModel = "Null model";
 
     /**
      * Write computed data to file
@@ -81,18 +96,40 @@ public class ProjectionWriter {
         output.append("#One-mode projection data generated by " + programVersion + "\n");
         output.append("#" + type + ((g.isSimplex) ? ": simplex" : ": duplex") + "\n");
         output.append("#" + weights + ": " + g.projection.weightType + "\n");
-        if (g.projection.weightType.equals("PNAS")) {
-            output.append("#" + finalized + ": true\n");            // PNAS does not support temporary results
+        if (g.projection.weightType.equals("PNAS") || !g.projection.needsSampling()) {
+            output.append("#" + finalized + ": true\n");            // PNAS and analytic weights do not support temporary results
         } else {
             output.append("#" + finalized + ": " + finalize + "\n");
         }
         output.append("#" + sourceFile + ": " + g.name + "\n");
         output.append("#" + time + ": " + new SimpleDateFormat("yyyy/MM/dd HH:mm:ss").format(new Date()) +"\n");
         output.append("#" + side + ": " + g.side + "\n");
-        output.append("#" + samples + ": " + g.samples + "\n");
-        output.append("#" + steps + ": " + g.steps + "\n");
-        output.append("#" + seed + ": " + g.randomSeed + "\n");
-        output.append("#" + decPrecision + ": " + precision + "\n");
+        if (g.projection.needsSampling()) {
+            output.append("#" + samples + ": " + g.samples + "\n");
+            output.append("#" + steps + ": " + ((g.mixing == null) ? g.steps : g.mixing.getSteps()) + "\n");
+            output.append("#" + seed + ": " + g.randomSeed + "\n");
+            output.append("#" + decPrecision + ": " + precision + "\n");
+            SamplingSettings sampling = g.settings;
+            if (sampling.getActorModel()) output.append("#" + burnin + ": 0 (direct samples)\n");
+            else output.append("#" + burnin + ": " + ((sampling.getWarmStart() == null) ? sampling.getBurnin() + "" : "0 (warm start)") + "\n");
+            if (sampling.getActorModel()) output.append("#" + nullModel + ": fixed actor degrees, events drawn by popularity\n");
+            if (sampling.getPooledNull()) output.append("#" + nullDistribution + ": pooled by degree\n");
+            if (sampling.getExceedances() > 0) {
+                output.append("#" + sequential + ": " + sampling.getExceedances() + " exceedances, alpha " + sampling.getAlpha() + "\n");
+            }
+            if (sampling.getPvalueTarget() > 0 || sampling.getLeverageTarget() > 0) {
+                output.append("#" + target + ": p-values " + sampling.getPvalueTarget() + " (alpha " + sampling.getAlpha()
+                              + "), leverages " + sampling.getLeverageTarget() + "\n");
+            }
+            if (sampling.getTimeLimit() > 0) output.append("#" + timeLimit + ": " + sampling.getTimeLimit() + " sec\n");
+            if (g.mixing != null) writeMixingSummary(output, g.mixing, df);
+            if (sampling.getSampler().equals("sis")) {          // importance sampling: report how many samples the weights are worth
+                output.append("#" + effectiveSamples + ": " + df.format(((SimplexProjection)g.projection).effectiveSamples) + "\n");
+            }
+        } else {                                                // analytic weights: no samples were taken
+            output.append("#" + samples + ": 0 (analytic)\n");
+            output.append("#" + decPrecision + ": " + precision + "\n");
+        }
         
         
         // write actual data to file
@@ -105,6 +142,10 @@ public class ProjectionWriter {
                 writeSimplexAllProjection(output, (SimplexGraph)g, finalize, df);
             } else if (g.projection.weightType.equals("PNAS")) {
                 writeSimplexPNASProjection(output, (SimplexGraph)g, finalize, df);
+            } else if (g.projection.weightType.equals("BiCM")) {
+                writeSimplexBiCMProjection(output, (SimplexGraph)g, df);
+            } else if (g.projection.weightType.equals("analytic")) {
+                writeSimplexAnalyticProjection(output, (SimplexGraph)g, df);
             } else {
                 System.out.println("Unknown projection type " + g.projection.weightType + ". Unable to write to file.");
             }
@@ -125,6 +166,22 @@ public class ProjectionWriter {
         output.close();
     }
     
+    /**
+     * Write a summary of the diagnostics of the chain as additional header lines
+     */
+    private static void writeMixingSummary(BufferedWriter output, MixingMonitor mixing, DecimalFormat df) throws Exception {
+        if (mixing.getTarget() > 0) {                       // the diagnostics are also kept for a target precision
+            output.append("#" + adaptive + ": target autocorrelation " + df.format(mixing.getTarget())
+                          + ", initial steps " + mixing.getInitialSteps() + "\n");
+        }
+        int sampleCount = mixing.getSampleCount();
+        output.append("#" + mixingSummary + ": samples " + sampleCount + ", steps " + mixing.getSteps()
+                      + ", acceptance " + df.format(mixing.getAcceptance()) + ", overlap " + df.format(mixing.getOverlap())
+                      + ", autocorrelation " + df.format(mixing.overallAutocorrelation())
+                      + " (last window " + df.format(mixing.getLastAutocorrelation()) + ")"
+                      + ", effective samples " + df.format(mixing.effectiveSamples(sampleCount)) + "\n");
+    }
+    
     private static void writeSimplexAllProjection(BufferedWriter output, SimplexGraph g, boolean finalize, DecimalFormat df) throws Exception {
         AllSimplexProjection proj = (AllSimplexProjection)g.projection;
         if (finalize) {
@@ -135,17 +192,26 @@ public class ProjectionWriter {
                 while (r < proj.result[ac1].length) {                             // and while its end is not reached
                     int ac2 = (int)proj.result[ac1][r++];
                     int initCooc = proj.result[ac1][r++];
-                    double pvalue = ((double)(proj.result[ac1][r++]))/g.samples;  // compute p-value
-                    long coocSum = proj.coocs[ac1][c++];
-                    long coocSquares = proj.coocs[ac1][c++];
+                    double pvalue;
+                    double expCooc;
+                    double coocSquareMean;
+                    if (g.settings.getPooledNull()) {                             // read from the pooled null distribution
+                        r++;
+                        pvalue = proj.pool.pvalue(ac1, ac2, initCooc);
+                        expCooc = proj.pool.mean(ac1, ac2);
+                        coocSquareMean = proj.pool.squareMean(ac1, ac2);
+                    } else {
+                        pvalue = ((double)(proj.result[ac1][r++]))/g.samples;     // compute p-value
+                        expCooc = ((double)(proj.coocs[ac1][c++]))/g.samples;
+                        coocSquareMean = ((double)(proj.coocs[ac1][c++]))/g.samples;
+                    }
                     int deg1 = g.degrees[ac1];
                     int deg2 = g.degrees[ac2];
                     
                     double sim = (initCooc*g.eventCount - deg1*deg2)/Math.pow(g.eventCount, 2);
-                    double expCooc = ((double)(coocSum))/g.samples;
                     double lev = (double)initCooc - expCooc;
                     double lift = (double)initCooc / expCooc;
-                    double zscore = lev/Math.sqrt( ((double)coocSquares)/g.samples - Math.pow(expCooc,2) );
+                    double zscore = lev/Math.sqrt( coocSquareMean - Math.pow(expCooc,2) );
                     double smin = lev/Math.min(deg1, deg2);
                     double smax = lev/Math.max(deg1, deg2);
                     double degProduct = Math.sqrt(deg1) * Math.sqrt(deg2);
@@ -165,9 +231,19 @@ public class ProjectionWriter {
                 while (r < proj.result[ac1].length) {                             // and while its end is not reached
                     int ac2 = (int)proj.result[ac1][r++];
                     int initCooc = proj.result[ac1][r++];
-                    int pvalCount = proj.result[ac1][r++];
-                    long coocSum = proj.coocs[ac1][c++];
-                    long coocSquares = proj.coocs[ac1][c++];
+                    long pvalCount;
+                    long coocSum;
+                    long coocSquares;
+                    if (g.settings.getPooledNull()) {                             // scale the pooled distribution to the samples
+                        r++;
+                        pvalCount = Math.round(proj.pool.pvalue(ac1, ac2, initCooc) * g.samples);
+                        coocSum = Math.round(proj.pool.mean(ac1, ac2) * g.samples);
+                        coocSquares = Math.round(proj.pool.squareMean(ac1, ac2) * g.samples);
+                    } else {
+                        pvalCount = proj.result[ac1][r++];
+                        coocSum = proj.coocs[ac1][c++];
+                        coocSquares = proj.coocs[ac1][c++];
+                    }
                     int deg1 = g.degrees[ac1];
                     int deg2 = g.degrees[ac2];
                     
@@ -392,24 +468,100 @@ public class ProjectionWriter {
         }
     }
     
+    private static void writeSimplexBiCMProjection(BufferedWriter output, SimplexGraph g, DecimalFormat df) throws Exception {
+        BiCMProjection proj = (BiCMProjection)g.projection;
+        output.append("#" + fit + ": " + proj.iterations + " iterations, max degree error " + proj.degreeError + "\n");
+        output.append("id1 id2 cooc expcooc variance lev zscore pvalue deg1 deg2\n");
+        for (int ac1 = 0; ac1 < g.actorCount; ac1++) {                        // for all actor nodes
+            int r = 0;                                                        // start at the beginning of their cooc list
+            int m = 0;
+            while (r < proj.result[ac1].length) {                             // and while its end is not reached
+                int ac2 = proj.result[ac1][r++];
+                int initCooc = proj.result[ac1][r++];
+                double expCooc = proj.moments[ac1][m++];
+                double variance = proj.moments[ac1][m++];
+                double pvalue = proj.moments[ac1][m++];
+                double lev = initCooc - expCooc;
+                double zscore = lev / Math.sqrt(variance);
+                
+                output.append(g.actorMap[ac1] + " " + g.actorMap[ac2] + " ");
+                output.append(initCooc+" "+df.format(expCooc)+" "+df.format(variance)+" "+df.format(lev)+" "+df.format(zscore)+" "+df.format(pvalue)+" "+g.degrees[ac1]+" "+g.degrees[ac2]+"\n");
+            }
+        }
+    }
+    
+    private static void writeSimplexAnalyticProjection(BufferedWriter output, SimplexGraph g, DecimalFormat df) throws Exception {
+        AnalyticProjection proj = (AnalyticProjection)g.projection;
+        output.append("id1 id2 cooc newmanCooc sim cos pearson hypergeom deg1 deg2\n");
+        double n = (double)g.eventCount;
+        for (int ac1 = 0; ac1 < g.actorCount; ac1++) {                        // for all actor nodes
+            int r = 0;                                                        // start at the beginning of their cooc list
+            int h = 0;
+            while (r < proj.result[ac1].length) {                             // and while its end is not reached
+                int ac2 = proj.result[ac1][r++];
+                int initCooc = proj.result[ac1][r++];
+                int deg1 = g.degrees[ac1];
+                int deg2 = g.degrees[ac2];
+
+                double sim = (double)initCooc - (deg1*deg2)/n;                // preliminary sim, still needs to be divided by eventcount
+                double pear = sim / Math.sqrt(deg1*deg2*(1 - deg1/n)*(1 - deg2/n));
+                sim = sim / n;                                                // finalize sim
+                double degProduct = Math.sqrt(deg1) * Math.sqrt(deg2);
+                double cos = initCooc/degProduct;
+                double hyper = proj.hypergeom[ac1][h++];
+                double newmanCooc = (deg1*deg2*proj.newmanConst) / g.edgeCount;
+                
+                output.append(g.actorMap[ac1] + " " + g.actorMap[ac2] + " ");
+                output.append(initCooc+" "+df.format(newmanCooc)+" "+df.format(sim)+" "+df.format(cos)+" "+df.format(pear)+" "+df.format(hyper)+" "+deg1+" "+deg2+"\n");
+            }
+        }
+    }
+    
     private static void writeSimplexPvalueProjection(BufferedWriter output, SimplexGraph g, boolean finalize, DecimalFormat df) throws Exception {
         int walks = g.samples;
         PvalueSimplexProjection proj = (PvalueSimplexProjection)g.projection;
+        if (g.settings.getExceedances() > 0) {                          // pairs stopped early: p-values are relative to their own samples
+            writeSimplexSequentialProjection(output, g, finalize, df);
+            return;
+        }
         if (finalize) output.append("id1 id2 pvalue\n");
         else output.append("id1 id2 pvalue_count\n");
         for (int a = 0; a < g.actorCount; a++) {                        // for all actor nodes
             int c = 0;                                                  // start at the beginning of their cooc list
             while (c < proj.result[a].length) {                         // and while its end is not reached
                 String writePval;
-                if (finalize) writePval = df.format(((double)(proj.result[a][c+2]))/walks);     // compute p-value
-                else writePval = Integer.toString(proj.result[a][c+2]);                         // or get pvalue count
                 int b = proj.result[a][c];                                                      // get ID of second actor
+                if (g.settings.getPooledNull()) {                                 // read from the pooled null distribution
+                    double pvalue = proj.pool.pvalue(a, b, proj.result[a][c+1]);
+                    if (finalize) writePval = df.format(pvalue);
+                    else writePval = Long.toString(Math.round(pvalue * walks));
+                } else if (finalize) writePval = df.format(((double)(proj.result[a][c+2]))/walks);     // compute p-value
+                else writePval = Integer.toString(proj.result[a][c+2]);                         // or get pvalue count
                 output.append(g.actorMap[a] + " " + g.actorMap[b] + " " + writePval +"\n");     // and append to file
                 c += 3;                                                 // then advance to next position in cooc list
             }
         }
     }
     
+    private static void writeSimplexSequentialProjection(BufferedWriter output, SimplexGraph g, boolean finalize, DecimalFormat df) throws Exception {
+        PvalueSimplexProjection proj = (PvalueSimplexProjection)g.projection;
+        if (finalize) output.append("id1 id2 pvalue samples\n");
+        else output.append("id1 id2 pvalue_count samples\n");
+        for (int a = 0; a < g.actorCount; a++) {                        // for all actor nodes
+            int c = 0;                                                  // start at the beginning of their cooc list
+            while (c < proj.result[a].length) {                         // and while its end is not reached
+                int b = proj.result[a][c];                                                      // get ID of second actor
+                int count = proj.result[a][c+2];
+                int used = proj.used[a][c/3];                                                   // samples evaluated for this pair
+                String writePval;
+                if (finalize) writePval = (used == 0) ? "NaN" : df.format(((double)count)/used);   // compute p-value
+                else writePval = Integer.toString(count);                                       // or get pvalue count
+                output.append(g.actorMap[a] + " " + g.actorMap[b] + " " + writePval + " " + used + "\n");
+                c += 3;                                                 // then advance to next position in cooc list
+            }
+        }
+    }
+    
     private static void writeDuplexPvalueProjection(BufferedWriter output, DuplexGraph g, boolean finalize, DecimalFormat df) throws Exception {
         int walks = g.samples;
         PvalueDuplexProjection proj = (PvalueDuplexProjection)g.projection;
@@ -720,11 +872,19 @@ public class ProjectionWriter {
             error = false;
         }
         
-        // read past line 12 as it only contains column labels
-        for (int i=0; i<fileCount; i++) input[i].readLine();
+        // read past optional header lines (e.g. mixing diagnostics) and line 12 as it only contains column labels
+        boolean stoppedEarly = false;                           // pairs were stopped early and count their own samples
+        for (int i=0; i<fileCount; i++) {
+            while ((line = input[i].readLine()) != null && line.startsWith("#")) {
+                if (line.startsWith("#" + sequential)) stoppedEarly = true;
+            }
+        }
         
         // read and compare the lines containing data, for each compute the final weights
-        if (weightType.equals("pvalue")) {
+        if (weightType.equals("pvalue") && stoppedEarly) {
+            output.append("id1 id2 pvalue samples\n");
+            mergeSequentialProjection(output, input, fileList, df);
+        } else if (weightType.equals("pvalue")) {
             // write line 12 for p-values
             if (isSimplex) output.append("id1 id2 pvalue\n");
             else output.append("id1 id2 type pvalue\n");
@@ -832,6 +992,54 @@ public class ProjectionWriter {
         }
     }
 
+    private static void mergeSequentialProjection(BufferedWriter output, BufferedReader[] input, File[] fileList, DecimalFormat df) throws Exception {
+        int lineCount = 12;
+        int fileCount = fileList.length;
+        String line;
+        while ((line = input[0].readLine()) != null) {
+            lineCount++;
+            String[] splitline = line.split(" ");
+            if (!hasSampleCount(line, splitline, lineCount, fileList[0])) return;
+            String edgeName = splitline[0] + " " + splitline[1];
+            long count = Long.parseLong(splitline[2]);
+            long used = Long.parseLong(splitline[3]);               // samples evaluated for this pair
+            for (int i=1; i<fileCount; i++) {
+                line = input[i].readLine();
+                splitline = line.split(" ");
+                if (!hasSampleCount(line, splitline, lineCount, fileList[i])) return;
+                if (edgeName.equals(splitline[0] + " " + splitline[1])) {
+                    count += Long.parseLong(splitline[2]);
+                    used += Long.parseLong(splitline[3]);
+                } else {
+                    System.out.println("Mismatching edges on line " + lineCount);
+                    System.out.println(fileList[0].getName() + ": " + edgeName);
+                    System.out.println(fileList[i].getName() + ": " + splitline[0] + " " + splitline[1]);
+                    System.out.println("Aborting.");
+                    return;
+                }
+            }
+            output.append(edgeName + " " + ((used == 0) ? "NaN" : df.format(((double)count)/used)) + " " + used + "\n");
+        }
+    }
+    
+    /**
+     * Checks that a line of a p-value file contains the number of samples of its pair, which only
+     * files with sequential stopping have
+     * @param line line to check
+     * @param splitline columns of the line
+     * @param lineCount number of the line
+     * @param file file the line was read from
+     * @return true if the line can be merged, otherwise the reason is printed
+     */
+    private static boolean hasSampleCount(String line, String[] splitline, int lineCount, File file) {
+        if (splitline.length == 4) return true;
+        System.out.println("Missing sample count on line " + lineCount);
+        System.out.println(file.getName() + ": " + line);
+        System.out.println("Files with and without sequential stopping cannot be merged.");
+        System.out.println("Aborting.");
+        return false;
+    }
+
     private static void mergeLeverageProjection(BufferedWriter output, BufferedReader[] input, File[] fileList, int walks, DecimalFormat df) throws Exception {
         int lineCount = 12;
         int fileCount = fileList.length;
@@ -42,6 +42,22 @@ public class Settings {
     private static final boolean default_finalize = false;      // finalize computation  by dividing p-value count / samples?
     private static final int default_precision = 8;             // number of decimal places in output numbers
     private static final String default_weightType = "pvalue";  // type of weight to be used for the projection
+    private static final String default_samplingMode = "shared";// sampling mode (shared chain, independent chains per thread or pipeline)
+    private static final boolean default_hashedAdjacency = false;// use hash sets instead of binary search for edge swaps?
+    private static final boolean default_signedAdjacency = false;// swap duplex edges on one list of signed events per actor?
+    private static final String default_rng = "java";           // random number generator used for sampling (java reproduces earlier results)
+    private static final String default_sampler = "swap";       // markov chain used for sampling (edge swaps, curveball trades, parallel swaps or importance sampling)
+    private static final double default_mixingTarget = 0;       // target autocorrelation for adaptive steps (0 means steps are fixed)
+    private static final int default_burnin = -1;               // number of steps before the first sample (-1 means the number of steps per sample)
+    private static final boolean default_incrementalCooc = false;// update coocs with every swap instead of recomputing them per sample?
+    private static final boolean default_pooledNull = false;    // pool the null distributions of all pairs with equal degrees?
+    private static final int default_exceedances = 0;           // exceedances after which a pair stops being sampled (0 means never)
+    private static final double default_alpha = 0.05;           // significance level pairs stop being sampled at once they are decided
+    private static final double default_pvalueTarget = 0;       // standard error of p-values sampling stops at (0 means all samples are taken)
+    private static final double default_leverageTarget = 0;     // standard error of leverages sampling stops at (0 means all samples are taken)
+    private static final int default_timeLimit = 0;             // wall-clock seconds the run may take (0 means no limit)
+    private static final boolean default_actorModel = false;    // fix only the actor degrees instead of both degree sequences?
+    private static final boolean default_hubBitsets = false;    // keep the events of actors with many events as bitsets?
     
     private String rootPath;            // path of the jar file
     private String inFilePath;          // absolute path to input file
@@ -56,6 +72,24 @@ public class Settings {
     private boolean finalize;           // finalize computation  by dividing p-value count / samples?
     private int precision;              // number of decimal places in output numbers
     private String weightType;          // which weight to compute for edges in the resulting projection
+    private String samplingMode;        // how the random walks are distributed over the threads
+    private boolean hashedAdjacency;    // use hash sets instead of binary search for edge swaps?
+    private boolean signedAdjacency;    // swap duplex edges on one list of signed events per actor?
+    private String sampler;             // markov chain used for sampling
+    private String rng;                 // random number generator used for sampling
+    private double mixingTarget;        // target autocorrelation of probe coocs between samples for adaptive steps
+    private int burnin;                 // number of steps before the first sample
+    private String saveChainFile;       // file the final state of the chain is saved to, or null
+    private String loadChainFile;       // file containing the state of an earlier chain to resume from, or null
+    private boolean incrementalCooc;    // update coocs with every swap instead of recomputing them per sample?
+    private boolean pooledNull;         // pool the null distributions of all pairs with equal degrees?
+    private int exceedances;            // exceedances after which a pair stops being sampled
+    private double alpha;               // significance level pairs stop being sampled at once they are decided
+    private double pvalueTarget;        // standard error of p-values sampling stops at
+    private double leverageTarget;      // standard error of leverages sampling stops at
+    private int timeLimit;              // wall-clock seconds the run may take
+    private boolean actorModel;         // fix only the actor degrees instead of both degree sequences?
+    private boolean hubBitsets;         // keep the events of actors with many events as bitsets?
     
     private static enum qualifiers { // enum used for switch when reading from ini / parameters
         in,                 // input file
@@ -68,7 +102,25 @@ public class Settings {
         savesettings,       // save settings to ini?
         finalize,           // compute final p-values?
         precision,          // number of decimal places in output numbers
-        weight;             // which weight is computed for edges
+        weight,             // which weight is computed for edges
+        sampling,           // sampling mode: shared, independent or pipeline
+        adjacency,          // adjacency representation used by the sampler: sorted, hashed or signed
+        sampler,            // markov chain used for sampling: swap, curveball or parallel, or importance sampling: sis
+        rng,                // random number generator used for sampling: java or xoroshiro
+        adaptive,           // target autocorrelation for adaptive steps
+        burnin,             // number of steps before the first sample
+        thinning,           // number of steps between samples (same as steps)
+        savechain,          // file to save the final state of the chain to
+        loadchain,          // file to load the state of an earlier chain from
+        cooc,               // evaluation of coocs: recompute per sample or incremental per swap
+        nulldist,           // null distribution of a pair: counted per pair or pooled by degree
+        exceedances,        // exceedances after which a pair stops being sampled
+        alpha,              // significance level pairs stop being sampled at once they are decided
+        target,             // standard error of p-values sampling stops at
+        levtarget,          // standard error of leverages sampling stops at
+        timelimit,          // wall-clock seconds the run may take
+        model,              // null model: fixed degree sequences or fixed actor degrees
+        hubs;               // events of actors with many events: sorted arrays only or also bitsets
     }
     
     /**
@@ -114,6 +166,24 @@ public class Settings {
         finalize = default_finalize;
         precision = default_precision;
         weightType = default_weightType;
+        samplingMode = default_samplingMode;
+        hashedAdjacency = default_hashedAdjacency;
+        signedAdjacency = default_signedAdjacency;
+        sampler = default_sampler;
+        rng = default_rng;
+        mixingTarget = default_mixingTarget;
+        burnin = default_burnin;
+        saveChainFile = null;
+        loadChainFile = null;
+        incrementalCooc = default_incrementalCooc;
+        pooledNull = default_pooledNull;
+        exceedances = default_exceedances;
+        alpha = default_alpha;
+        pvalueTarget = default_pvalueTarget;
+        leverageTarget = default_leverageTarget;
+        timeLimit = default_timeLimit;
+        actorModel = default_actorModel;
+        hubBitsets = default_hubBitsets;
     }
     
     /**
@@ -124,15 +194,54 @@ public class Settings {
         System.out.println("Provide parameters in this format: param=value");
         System.out.println("in            name of input file");
         System.out.println("projection    side of graph to project onto [left, right]");
-        System.out.println("samples       number of samples the FDSM algorithm takes");
-        System.out.println("steps         number of steps per sample (0 = m log m)");
+        System.out.println("samples       number of samples the FDSM algorithm takes (maximum if a target is set)");
+        System.out.println("steps         number of steps per sample (0 = m log m swaps or n log n trades)");
+        System.out.println("thinning      same as steps");
+        System.out.println("burnin        number of steps before the first sample (-1 = same as steps)");
         System.out.println("seed          random seed for FDSM algorithm (0 = system time)");
         System.out.println("threads       number of threads the FDSM algorithm will use");
         System.out.println("type          type of projection [simplex, duplex]");
         System.out.println("savesettings  save current settings to ini file? [true, false]");
         System.out.println("finalize      output final weights? [true, false]");
         System.out.println("precision     precision of numeric outputs (min 1, default 8)");
-        System.out.println("weight        compute what weight? [lev, pvalue, PNAS, all]");
+        System.out.println("weight        compute what weight? BiCM and analytic weights are computed");
+        System.out.println("              without sampling (simplex only) [lev, pvalue, PNAS, all, BiCM, analytic]");
+        System.out.println("sampling      one chain shared by all threads, one chain per thread or one chain");
+        System.out.println("              generating samples while the threads evaluate [shared, independent, pipeline]");
+        System.out.println("adjacency     edge lookup during sampling: binary search, hash sets or, for duplex swaps,");
+        System.out.println("              binary search in one list of signed events per actor, which draws edges");
+        System.out.println("              in another order than sorted [sorted, hashed, signed]");
+        System.out.println("sampler       markov chain: single edge swaps, curveball trades or edge swaps");
+        System.out.println("              applied by all threads in batches, or independent weighted samples");
+        System.out.println("              by sequential importance sampling (simplex only) [swap, curveball, parallel, sis]");
+        System.out.println("rng           random number generator: java.util.Random, which reproduces the results");
+        System.out.println("              of earlier versions for a seed, or the faster xoroshiro128** [java, xoroshiro]");
+        System.out.println("adaptive      adapt steps during sampling so the autocorrelation of coocs between");
+        System.out.println("              samples stays below this target, e.g. 0.05 (0 = fixed steps)");
+        System.out.println("savechain     name of a file the final randomized graph of the chain is saved to");
+        System.out.println("              (of the first chain for independent sampling)");
+        System.out.println("loadchain     name of a file saved by an earlier run on the same input. The chain");
+        System.out.println("              resumes from the randomized graph in it without burn-in (for independent");
+        System.out.println("              sampling, all chains resume from the same graph)");
+        System.out.println("cooc          recompute the coocs of each sample or update them with every swap or");
+        System.out.println("              trade (simplex swap and curveball samplers only) [recompute, incremental]");
+        System.out.println("nulldist      count the null distribution of each pair or pool it over all pairs with the");
+        System.out.println("              same degrees (simplex pvalue and all weights only) [pair, degree]");
+        System.out.println("exceedances   after 100 samples, stop sampling a pair once its sampled cooc reached the");
+        System.out.println("              observed one this often, or once it is clearly above or below alpha");
+        System.out.println("              (simplex pvalue weights only, 0 = sample all pairs until the end)");
+        System.out.println("alpha         significance level for stopping pairs or sampling early (default 0.05)");
+        System.out.println("target        stop sampling once the standard error of all p-values up to 2*alpha is");
+        System.out.println("              below this, e.g. 0.005 (simplex pvalue and all weights, 0 = all samples)");
+        System.out.println("levtarget     stop sampling once the standard error of all leverages is below this");
+        System.out.println("              (simplex all weights only, 0 = all samples)");
+        System.out.println("timelimit     wall-clock seconds the run may take. Sampling stops early so that the");
+        System.out.println("              results of the samples taken are written in time (0 = no limit)");
+        System.out.println("model         null model: both degree sequences fixed (FDSM), or only the actor degrees");
+        System.out.println("              fixed with events drawn by popularity, sampled directly without a");
+        System.out.println("              markov chain (simplex only) [fdsm, actors]");
+        System.out.println("hubs          keep the events of actors with many events only as sorted arrays, or also");
+        System.out.println("              as bitsets to compute their coocs by bit operations (simplex only) [array, bitset]");
         System.out.println();
         System.out.println("Special parameter: merge=directory can be used to merge all non-finalized");
         System.out.println("data files previously created by VertexVortex contained in the specified");
@@ -188,6 +297,75 @@ public class Settings {
                 case precision:
                     setPrecision(Integer.parseInt(value));
                     break;
+                case sampling:
+                    if (value.equals("shared") || value.equals("independent") || value.equals("pipeline")) setSamplingMode(value);
+                    else throw new Exception();
+                    break;
+                case adjacency:
+                    if (value.equals("sorted") || value.equals("hashed") || value.equals("signed")) {
+                        setHashedAdjacency(value.equals("hashed"));
+                        setSignedAdjacency(value.equals("signed"));
+                    } else throw new Exception();
+                    break;
+                case sampler:
+                    if (value.equals("swap") || value.equals("curveball") || value.equals("parallel")
+                            || value.equals("sis")) setSampler(value);
+                    else throw new Exception();
+                    break;
+                case rng:
+                    if (value.equals("xoroshiro") || value.equals("java")) setRng(value);
+                    else throw new Exception();
+                    break;
+                case adaptive:
+                    setMixingTarget(Double.parseDouble(value));
+                    break;
+                case burnin:
+                    setBurnin(Integer.parseInt(value));
+                    break;
+                case thinning:
+                    setSteps(Integer.parseInt(value));
+                    break;
+                case savechain:
+                    setSaveChainFile(value);
+                    break;
+                case loadchain:
+                    setLoadChainFile(value);
+                    break;
+                case cooc:
+                    if (value.equals("recompute")) setIncrementalCooc(false);
+                    else if (value.equals("incremental")) setIncrementalCooc(true);
+                    else throw new Exception();
+                    break;
+                case nulldist:
+                    if (value.equals("pair")) setPooledNull(false);
+                    else if (value.equals("degree")) setPooledNull(true);
+                    else throw new Exception();
+                    break;
+                case exceedances:
+                    setExceedances(Integer.parseInt(value));
+                    break;
+                case alpha:
+                    setAlpha(Double.parseDouble(value));
+                    break;
+                case target:
+                    setPvalueTarget(Double.parseDouble(value));
+                    break;
+                case levtarget:
+                    setLeverageTarget(Double.parseDouble(value));
+                    break;
+                case timelimit:
+                    setTimeLimit(Integer.parseInt(value));
+                    break;
+                case model:
+                    if (value.equals("fdsm")) setActorModel(false);
+                    else if (value.equals("actors")) setActorModel(true);
+                    else throw new Exception();
+                    break;
+                case hubs:
+                    if (value.equals("array")) setHubBitsets(false);
+                    else if (value.equals("bitset")) setHubBitsets(true);
+                    else throw new Exception();
+                    break;
                 default:
             }
         } catch (Exception e) {
@@ -240,6 +418,21 @@ public class Settings {
         buffer.write("finalize="+ getFinalize() + "\n");
         buffer.write("precision="+ getPrecision() + "\n");
         buffer.write("weight="+ getWeightType() + "\n");
+        buffer.write("sampling="+ getSamplingMode() + "\n");
+        buffer.write("adjacency="+ ((getHashedAdjacency()) ? "hashed" : (getSignedAdjacency()) ? "signed" : "sorted") + "\n");
+        buffer.write("sampler="+ getSampler() + "\n");
+        buffer.write("rng="+ getRng() + "\n");
+        buffer.write("adaptive="+ getMixingTarget() + "\n");
+        buffer.write("burnin="+ getBurnin() + "\n");
+        buffer.write("cooc="+ ((getIncrementalCooc()) ? "incremental" : "recompute") + "\n");
+        buffer.write("nulldist="+ ((getPooledNull()) ? "degree" : "pair") + "\n");
+        buffer.write("exceedances="+ getExceedances() + "\n");
+        buffer.write("alpha="+ getAlpha() + "\n");
+        buffer.write("target="+ getPvalueTarget() + "\n");
+        buffer.write("levtarget="+ getLeverageTarget() + "\n");
+        buffer.write("timelimit="+ getTimeLimit() + "\n");
+        buffer.write("model="+ ((getActorModel()) ? "actors" : "fdsm") + "\n");
+        buffer.write("hubs="+ ((getHubBitsets()) ? "bitset" : "array") + "\n");
         buffer.close();
     }
     
@@ -268,6 +461,59 @@ public class Settings {
     public String getWeightType() { return weightType; }
     public void setWeightType(String weightType) { this.weightType = weightType; }
     
+    public String getSamplingMode() { return samplingMode; }
+    public void setSamplingMode(String samplingMode) { this.samplingMode = samplingMode; }
+    
+    public boolean getHashedAdjacency() { return hashedAdjacency; }
+    public void setHashedAdjacency(boolean hashedAdjacency) { this.hashedAdjacency = hashedAdjacency; }
+    public boolean getSignedAdjacency() { return signedAdjacency; }
+    public void setSignedAdjacency(boolean signedAdjacency) { this.signedAdjacency = signedAdjacency; }
+    
+    public String getSampler() { return sampler; }
+    public void setSampler(String sampler) { this.sampler = sampler; }
+    
+    public String getRng() { return rng; }
+    public void setRng(String rng) { this.rng = rng; }
+    
+    public double getMixingTarget() { return mixingTarget; }
+    public void setMixingTarget(double mixingTarget) { this.mixingTarget = mixingTarget; }
+    
+    public int getBurnin() { return burnin; }
+    public void setBurnin(int burnin) { this.burnin = burnin; }
+    
+    public String getSaveChainFile() { return saveChainFile; }
+    public void setSaveChainFile(String saveChainFile) { this.saveChainFile = saveChainFile; }
+    
+    public String getLoadChainFile() { return loadChainFile; }
+    public void setLoadChainFile(String loadChainFile) { this.loadChainFile = loadChainFile; }
+    
+    public boolean getIncrementalCooc() { return incrementalCooc; }
+    public void setIncrementalCooc(boolean incrementalCooc) { this.incrementalCooc = incrementalCooc; }
+    
+    public boolean getPooledNull() { return pooledNull; }
+    public void setPooledNull(boolean pooledNull) { this.pooledNull = pooledNull; }
+    
+    public int getExceedances() { return exceedances; }
+    public void setExceedances(int exceedances) { this.exceedances = exceedances; }
+    
+    public double getAlpha() { return alpha; }
+    public void setAlpha(double alpha) { this.alpha = alpha; }
+    
+    public double getPvalueTarget() { return pvalueTarget; }
+    public void setPvalueTarget(double pvalueTarget) { this.pvalueTarget = pvalueTarget; }
+    
+    public double getLeverageTarget() { return leverageTarget; }
+    public void setLeverageTarget(double leverageTarget) { this.leverageTarget = leverageTarget; }
+    
+    public int getTimeLimit() { return timeLimit; }
+    public void setTimeLimit(int timeLimit) { this.timeLimit = timeLimit; }
+    
+    public boolean getActorModel() { return actorModel; }
+    public void setActorModel(boolean actorModel) { this.actorModel = actorModel; }
+    
+    public boolean getHubBitsets() { return hubBitsets; }
+    public void setHubBitsets(boolean hubBitsets) { this.hubBitsets = hubBitsets; }
+    
     public boolean getProjectionType() { return projectionType; }
     public void setProjectionType(boolean projectionType) { this.projectionType = projectionType; }
     